@@ -0,0 +1,46 @@
+import java.io.IOException;
+
+/** Splits buffered bytes into {@link BinaryProtocol} frames and decodes them. */
+public class BinaryFrameDecoder implements FrameDecoder {
+    private byte[] pending = new byte[256];
+    private int start;
+    private int end;
+    private int lastFrameLength;
+
+    /** Appends bytes received from the channel. */
+    @Override
+    public void append(byte[] data, int offset, int length) {
+        if (end + length > pending.length) {
+            int used = end - start;
+            byte[] target = (used + length > pending.length) ? new byte[Math.max(pending.length * 2, used + length)] : pending;
+            System.arraycopy(pending, start, target, 0, used);
+            pending = target;
+            start = 0;
+            end = used;
+        }
+        System.arraycopy(data, offset, pending, end, length);
+        end += length;
+    }
+
+    /** Returns the next complete frame as a GameMessage or CardSelection, or null if it is not complete yet. */
+    @Override
+    public Object next() throws IOException {
+        int frameLength = BinaryProtocol.frameLength(pending, start, end - start);
+        if (frameLength < 0) {
+            return null;
+        }
+        Object message = BinaryProtocol.decode(pending, start, frameLength);
+        start += frameLength;
+        lastFrameLength = frameLength;
+        if (start == end) {
+            start = end = 0;
+        }
+        return message;
+    }
+
+    /** Returns the length of the last decoded frame. */
+    @Override
+    public int lastFrameLength() {
+        return lastFrameLength;
+    }
+}
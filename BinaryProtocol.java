@@ -0,0 +1,655 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary wire format for game messages.
+ * <p>
+ * A connection starts with a hello of three bytes: 'M', 'G' and the protocol version.
+ * The server answers with the same three bytes and the version it chose.
+ * After that every message is one frame: a varint length, a type byte and the fields
+ * of that message type as varints. A client that does not send the hello is spoken to
+ * with Java serialization. That format still works, but the server sends the board only as
+ * BOARD_SNAPSHOT and BOARD_DELTA, so a client that expects BOARD_DATA gets no board in either.
+ * <p>
+ * {@link CardSelection} objects travel as CARD_SELECTION frames and are decoded back to
+ * CardSelection, so both formats hand the same objects to the game code.
+ */
+public final class BinaryProtocol {
+    public static final byte MAGIC_0 = 'M';
+    public static final byte MAGIC_1 = 'G';
+    public static final byte VERSION = 1;
+
+    // Upper bound for a single frame, protects against garbage lengths; Java-format objects get the same limit
+    static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    private static final GameMessage.MessageType[] TYPES = GameMessage.MessageType.values();
+
+    private BinaryProtocol() {
+    }
+
+    /** Returns the hello bytes a client sends (and the server echoes) for the given version. */
+    public static byte[] hello(int version) {
+        return new byte[] {MAGIC_0, MAGIC_1, (byte) version};
+    }
+
+    /** Returns true if the first two bytes of a connection are the binary protocol magic. */
+    public static boolean isHello(int first, int second) {
+        return first == MAGIC_0 && second == MAGIC_1;
+    }
+
+    // -------- Encoding --------
+
+    /** Encodes a GameMessage or CardSelection into a complete frame, including the length prefix. */
+    public static byte[] encode(Object message) throws IOException {
+        FrameWriter body = new FrameWriter(null);
+        writeBody(body, message);
+        return body.toFrame();
+    }
+
+    /**
+     * Encodes a GameMessage or CardSelection into a buffer taken from the pool. The frame lies between
+     * the buffer's position and limit; the caller gives the buffer back to the pool when it was sent.
+     */
+    public static ByteBuffer encode(Object message, BufferPool pool) throws IOException {
+        FrameWriter body = new FrameWriter(pool);
+        try {
+            writeBody(body, message);
+        } catch (IOException | RuntimeException e) {
+            pool.release(body.pooled);
+            throw e;
+        }
+        return body.toPooledFrame();
+    }
+
+    private static void writeBody(FrameWriter body, Object message) throws IOException {
+        if (message instanceof CardSelection) {
+            body.writeByte(GameMessage.MessageType.CARD_SELECTION.ordinal());
+            writeSelection(body, (CardSelection) message);
+        } else if (message instanceof GameMessage) {
+            writeMessage(body, (GameMessage) message);
+        } else {
+            throw new NotSerializableException("cannot encode " + message);
+        }
+    }
+
+    private static void writeMessage(FrameWriter out, GameMessage message) throws IOException {
+        GameMessage.MessageType type = message.getType();
+        out.writeByte(type.ordinal());
+        switch (type) {
+            case JOIN_GAME: {
+                Integer rating = (Integer) message.getData();
+                out.writeVarint(message.getPlayerNumber());
+                out.writeString(message.getMessage());
+                out.writeVarint(rating != null ? rating + 1 : 0);
+                break;
+            }
+            case NEW_GAME_REQUEST:
+                out.writeVarint(message.getPlayerNumber());
+                out.writeString(message.getMessage());
+                break;
+            case GAME_START: {
+                GameStartInfo info = (GameStartInfo) message.getData();
+                out.writeVarint(message.getPlayerNumber());
+                out.writeVarlong(info != null ? info.getRevealDelayMillis() + 1 : 0);
+                out.writeString(message.getMessage());
+                if (info != null) {
+                    out.writeString(info.getResumeToken());
+                    int[] scores = info.getScores();
+                    out.writeVarint(scores != null ? scores.length : 0);
+                    if (scores != null) {
+                        for (int score : scores) out.writeVarint(score);
+                    }
+                    out.writeByte(info.getSeed() != null ? 1 : 0);
+                    if (info.getSeed() != null) out.writeVarlong(info.getSeed());
+                }
+                break;
+            }
+            case BOARD_DATA:
+                writeBoard(out, (GameBoard) message.getData());
+                break;
+            case PLAYER_TURN:
+                out.writeVarint(message.getPlayerNumber());
+                break;
+            case CARD_SELECTION:
+                writeSelection(out, (CardSelection) message.getData());
+                break;
+            case TURN_RESULT:
+                writeTurnResult(out, (TurnResult) message.getData());
+                break;
+            case GAME_END:
+                out.writeString(message.getMessage());
+                break;
+            case BOARD_SNAPSHOT:
+                writeSnapshot(out, (BoardSnapshot) message.getData());
+                break;
+            case BOARD_DELTA:
+                writeDelta(out, (BoardDelta) message.getData());
+                break;
+            case RESYNC_REQUEST: {
+                Long lastSequence = (Long) message.getData();
+                out.writeVarint(message.getPlayerNumber());
+                out.writeVarlong(lastSequence != null ? lastSequence + 1 : 0);
+                break;
+            }
+            case CARD_REVEAL:
+                out.writeVarint(message.getPlayerNumber());
+                out.writeVarint((Integer) message.getData());
+                break;
+            case PING:
+            case PONG:
+                out.writeVarlong((Long) message.getData());
+                break;
+            case RESUME_REQUEST:
+            case RESUME_FAILED:
+                out.writeString(message.getMessage());
+                break;
+            case PLAYER_LEFT:
+            case PLAYER_RESUMED:
+                out.writeVarint(message.getPlayerNumber());
+                break;
+            case SPECTATE: {
+                Integer sessionId = (Integer) message.getData();
+                out.writeVarint(sessionId != null ? sessionId + 1 : 0);
+                break;
+            }
+            default:
+                throw new NotSerializableException("no codec for " + type);
+        }
+    }
+
+    private static void writeSnapshot(FrameWriter out, BoardSnapshot snapshot) {
+        out.writeVarlong(snapshot.getSequence());
+        out.writeVarint(snapshot.getRows());
+        out.writeVarint(snapshot.getCols());
+        int[] values = snapshot.getValues();
+        out.writeByte(values != null ? 1 : 0);
+        if (values != null) {
+            for (int value : values) {
+                out.writeVarint(value);
+            }
+        }
+        writeStates(out, snapshot.getStates());
+    }
+
+    private static void writeDelta(FrameWriter out, BoardDelta delta) {
+        out.writeVarlong(delta.getSequence());
+        int[] cells = delta.getCells();
+        byte[] states = delta.getStates();
+        int[] values = delta.getValues();
+        out.writeVarint(cells.length);
+        out.writeByte(values != null ? 1 : 0);
+        for (int i = 0; i < cells.length; i++) {
+            out.writeVarint(cells[i]);
+            out.writeByte(states[i]);
+            if (values != null) out.writeVarint(values[i]);
+        }
+    }
+
+    /** Packs cell states (values 0-3) four to a byte. */
+    private static void writeStates(FrameWriter out, byte[] states) {
+        for (int i = 0; i < states.length; i += 4) {
+            int bits = 0;
+            for (int j = 0; j < 4 && i + j < states.length; j++) {
+                bits |= (states[i + j] & 3) << (j * 2);
+            }
+            out.writeByte(bits);
+        }
+    }
+
+    private static void writeSelection(FrameWriter out, CardSelection selection) {
+        out.writeVarint(selection.getRow1());
+        out.writeVarint(selection.getCol1());
+        out.writeVarint(selection.getRow2());
+        out.writeVarint(selection.getCol2());
+        out.writeVarint(selection.getPlayerNumber());
+    }
+
+    private static void writeTurnResult(FrameWriter out, TurnResult result) {
+        writeSelection(out, result.getSelection());
+        out.writeByte((result.isMatch() ? 1 : 0) | (result.isGameFinished() ? 2 : 0));
+        int[] scores = result.getScores();
+        out.writeVarint(scores.length);
+        for (int score : scores) {
+            out.writeVarint(score);
+        }
+        out.writeVarint(result.getNextPlayer());
+        out.writeVarint(result.getValue1());
+        out.writeVarint(result.getValue2());
+    }
+
+    private static void writeBoard(FrameWriter out, GameBoard board) {
+        int rows = board.getRows();
+        int cols = board.getCols();
+        out.writeVarint(rows);
+        out.writeVarint(cols);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                out.writeVarint(board.getCardValue(row, col));
+            }
+        }
+        // Revealed and matched flags packed as two bits per cell
+        int bits = 0;
+        int bitCount = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (board.isRevealed(row, col)) bits |= 1 << bitCount;
+                if (board.isMatched(row, col)) bits |= 2 << bitCount;
+                bitCount += 2;
+                if (bitCount == 8) {
+                    out.writeByte(bits);
+                    bits = 0;
+                    bitCount = 0;
+                }
+            }
+        }
+        if (bitCount > 0) out.writeByte(bits);
+    }
+
+    // -------- Decoding --------
+
+    /**
+     * Returns the total size of the frame at the start of the buffer,
+     * or -1 if the buffer does not hold a complete frame yet.
+     */
+    public static int frameLength(byte[] buffer, int offset, int length) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            if (i >= length) return -1;
+            int b = buffer[offset + i] & 0xff;
+            value |= (b & 0x7f) << (7 * i);
+            if ((b & 0x80) == 0) {
+                checkFrameLength(value);
+                int total = i + 1 + value;
+                return total <= length ? total : -1;
+            }
+        }
+        throw new StreamCorruptedException("invalid frame length");
+    }
+
+    /** Decodes a complete frame (as measured by {@link #frameLength}). */
+    public static Object decode(byte[] buffer, int offset, int length) throws IOException {
+        FrameReader in = new FrameReader(buffer, offset, offset + length);
+        in.readVarint(); // length prefix
+        return decodeBody(in);
+    }
+
+    /** Reads one frame from a blocking stream. */
+    public static Object read(InputStream input) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = input.read();
+            if (b < 0) throw new EOFException();
+            if (shift == 28 && (b & 0xf0) != 0) throw new StreamCorruptedException("invalid frame length");
+            length |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        checkFrameLength(length);
+        byte[] body = new byte[length];
+        new DataInputStream(input).readFully(body);
+        return decodeBody(new FrameReader(body, 0, length));
+    }
+
+    private static void checkFrameLength(int length) throws StreamCorruptedException {
+        if (length <= 0 || length > MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("invalid frame length: " + length);
+        }
+    }
+
+    private static Object decodeBody(FrameReader in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal >= TYPES.length) {
+            throw new StreamCorruptedException("unknown message type: " + ordinal);
+        }
+        GameMessage.MessageType type = TYPES[ordinal];
+        GameMessage message = new GameMessage(type);
+        switch (type) {
+            case JOIN_GAME: {
+                message.setPlayerNumber(in.readVarint());
+                message.setMessage(in.readString());
+                int rating = in.readVarint();
+                if (rating > 0) message.setData(rating - 1);
+                break;
+            }
+            case NEW_GAME_REQUEST:
+                message.setPlayerNumber(in.readVarint());
+                message.setMessage(in.readString());
+                break;
+            case GAME_START: {
+                message.setPlayerNumber(in.readVarint());
+                long delay = in.readVarlong();
+                message.setMessage(in.readString());
+                if (delay > 0) {
+                    GameStartInfo info = new GameStartInfo(delay - 1);
+                    info.setResumeToken(in.readString());
+                    int count = in.readVarint();
+                    if (count < 0 || count > GameSession.MAX_PLAYERS) throw new StreamCorruptedException("invalid score count: " + count);
+                    if (count > 0) {
+                        int[] scores = new int[count];
+                        for (int i = 0; i < count; i++) scores[i] = in.readVarint();
+                        info.setScores(scores);
+                    }
+                    if (in.readByte() != 0) info.setSeed(in.readVarlong());
+                    message.setData(info);
+                }
+                break;
+            }
+            case BOARD_DATA:
+                message.setData(readBoard(in));
+                break;
+            case PLAYER_TURN:
+                message.setPlayerNumber(in.readVarint());
+                break;
+            case CARD_SELECTION:
+                return readSelection(in);
+            case TURN_RESULT:
+                message.setData(readTurnResult(in));
+                break;
+            case GAME_END:
+                message.setMessage(in.readString());
+                break;
+            case BOARD_SNAPSHOT:
+                message.setData(readSnapshot(in));
+                break;
+            case BOARD_DELTA:
+                message.setData(readDelta(in));
+                break;
+            case RESYNC_REQUEST: {
+                message.setPlayerNumber(in.readVarint());
+                long lastSequence = in.readVarlong();
+                if (lastSequence > 0) message.setData(lastSequence - 1);
+                break;
+            }
+            case CARD_REVEAL:
+                message.setPlayerNumber(in.readVarint());
+                message.setData(in.readVarint());
+                break;
+            case PING:
+            case PONG:
+                message.setData(in.readVarlong());
+                break;
+            case RESUME_REQUEST:
+            case RESUME_FAILED:
+                message.setMessage(in.readString());
+                break;
+            case PLAYER_LEFT:
+            case PLAYER_RESUMED:
+                message.setPlayerNumber(in.readVarint());
+                break;
+            case SPECTATE: {
+                int sessionId = in.readVarint();
+                if (sessionId > 0) message.setData(sessionId - 1);
+                break;
+            }
+            default:
+                throw new StreamCorruptedException("no codec for " + type);
+        }
+        return message;
+    }
+
+    private static BoardSnapshot readSnapshot(FrameReader in) throws IOException {
+        long sequence = in.readVarlong();
+        int rows = in.readVarint();
+        int cols = in.readVarint();
+        if (rows <= 0 || cols <= 0 || (long) rows * cols > MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("invalid board size: " + rows + "x" + cols);
+        }
+        boolean hasValues = in.readByte() != 0;
+        // Each value takes at least a byte and the states four cells a byte, so a short frame cannot claim a large board
+        in.require((hasValues ? (long) rows * cols : 0) + ((long) rows * cols + 3) / 4);
+        int[] values = null;
+        if (hasValues) {
+            values = new int[rows * cols];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readVarint();
+            }
+        }
+        return new BoardSnapshot(sequence, rows, cols, values, readStates(in, rows * cols));
+    }
+
+    private static BoardDelta readDelta(FrameReader in) throws IOException {
+        long sequence = in.readVarlong();
+        int count = in.readVarint();
+        if (count < 0 || count > MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("invalid delta size: " + count);
+        }
+        boolean hasValues = in.readByte() != 0;
+        // A cell takes at least two bytes, three with its value
+        in.require((long) count * (hasValues ? 3 : 2));
+        int[] cells = new int[count];
+        byte[] states = new byte[count];
+        int[] values = hasValues ? new int[count] : null;
+        for (int i = 0; i < count; i++) {
+            cells[i] = in.readVarint();
+            states[i] = (byte) in.readByte();
+            if (values != null) values[i] = in.readVarint();
+        }
+        return new BoardDelta(sequence, cells, states, values);
+    }
+
+    private static byte[] readStates(FrameReader in, int count) throws IOException {
+        byte[] states = new byte[count];
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            if ((i & 3) == 0) bits = in.readByte();
+            states[i] = (byte) ((bits >> ((i & 3) * 2)) & 3);
+        }
+        return states;
+    }
+
+    private static CardSelection readSelection(FrameReader in) throws IOException {
+        int row1 = in.readVarint();
+        int col1 = in.readVarint();
+        int row2 = in.readVarint();
+        int col2 = in.readVarint();
+        return new CardSelection(row1, col1, row2, col2, in.readVarint());
+    }
+
+    private static TurnResult readTurnResult(FrameReader in) throws IOException {
+        CardSelection selection = readSelection(in);
+        int flags = in.readByte();
+        int count = in.readVarint();
+        if (count < 0 || count > GameSession.MAX_PLAYERS) {
+            throw new StreamCorruptedException("invalid score count: " + count);
+        }
+        int[] scores = new int[count];
+        for (int i = 0; i < count; i++) {
+            scores[i] = in.readVarint();
+        }
+        int nextPlayer = in.readVarint();
+        TurnResult result = new TurnResult(selection, (flags & 1) != 0, scores, nextPlayer, (flags & 2) != 0);
+        int value1 = in.readVarint();
+        result.setValues(value1, in.readVarint());
+        return result;
+    }
+
+    private static GameBoard readBoard(FrameReader in) throws IOException {
+        int rows = in.readVarint();
+        int cols = in.readVarint();
+        if (rows <= 0 || cols <= 0 || (long) rows * cols > MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("invalid board size: " + rows + "x" + cols);
+        }
+        in.require((long) rows * cols + ((long) rows * cols + 3) / 4);
+        int[] values = new int[rows * cols];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readVarint();
+        }
+        GameBoard board = new GameBoard(rows, cols, values);
+        int bits = 0;
+        for (int i = 0; i < values.length; i++) {
+            if ((i & 3) == 0) bits = in.readByte();
+            int state = (bits >> ((i & 3) * 2)) & 3;
+            if ((state & 2) != 0) {
+                board.markAsMatched(i / cols, i % cols);
+            } else if ((state & 1) != 0) {
+                board.revealCard(i / cols, i % cols);
+            }
+        }
+        return board;
+    }
+
+    // -------- Buffers --------
+
+    /** Growable buffer for the body of one frame. */
+    private static final class FrameWriter {
+        private static final int PREFIX_ROOM = 5;     // longest varint length prefix
+
+        private final BufferPool pool;
+        private ByteBuffer pooled;
+        private byte[] buffer;
+        private final int start;    // where the body begins; pooled frames leave room for the prefix in front
+        private int position;
+
+        /** Creates a writer over a private array, or over pooled buffers if a pool is given. */
+        FrameWriter(BufferPool pool) {
+            this.pool = pool;
+            if (pool != null) {
+                pooled = pool.acquire(BufferPool.MIN_SIZE);
+                buffer = pooled.array();
+                start = PREFIX_ROOM;
+            } else {
+                buffer = new byte[64];
+                start = 0;
+            }
+            position = start;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        /** Writes a nullable string as (byte length + 1) followed by UTF-8 bytes; 0 means null. */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        /** Returns the length prefix followed by the body. */
+        byte[] toFrame() {
+            byte[] frame = new byte[prefixLength() + position];
+            int p = writePrefix(frame, 0);
+            System.arraycopy(buffer, 0, frame, p, position);
+            return frame;
+        }
+
+        /** Writes the length prefix right in front of the body and returns the pooled buffer around the frame. */
+        ByteBuffer toPooledFrame() {
+            int frameStart = start - prefixLength();
+            writePrefix(buffer, frameStart);
+            pooled.limit(position).position(frameStart);
+            return pooled;
+        }
+
+        private int prefixLength() {
+            int prefix = 1;
+            for (int v = (position - start) >>> 7; v != 0; v >>>= 7) prefix++;
+            return prefix;
+        }
+
+        private int writePrefix(byte[] target, int p) {
+            int value = position - start;
+            while ((value & ~0x7f) != 0) {
+                target[p++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            target[p++] = (byte) value;
+            return p;
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                int size = Math.max(buffer.length * 2, position + extra);
+                if (pool != null) {
+                    ByteBuffer bigger = pool.acquire(size);
+                    System.arraycopy(buffer, 0, bigger.array(), 0, position);
+                    pool.release(pooled);
+                    pooled = bigger;
+                    buffer = bigger.array();
+                } else {
+                    byte[] bigger = new byte[size];
+                    System.arraycopy(buffer, 0, bigger, 0, position);
+                    buffer = bigger;
+                }
+            }
+        }
+    }
+
+    /** Reads fields from a complete frame. */
+    private static final class FrameReader {
+        private final byte[] buffer;
+        private int position;
+        private final int limit;
+
+        FrameReader(byte[] buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        /** Fails unless at least the given number of bytes is left, before anything is allocated for them. */
+        void require(long bytes) throws EOFException {
+            if (bytes > limit - position) throw new EOFException("truncated frame");
+        }
+
+        int readByte() throws EOFException {
+            if (position >= limit) throw new EOFException("truncated frame");
+            return buffer[position++] & 0xff;
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new StreamCorruptedException("invalid varint");
+        }
+
+        long readVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new StreamCorruptedException("invalid varlong");
+        }
+
+        String readString() throws IOException {
+            int length = readVarint();
+            if (length == 0) return null;
+            length--;
+            if (length < 0 || length > limit - position) throw new EOFException("truncated string");
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
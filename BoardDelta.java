@@ -0,0 +1,41 @@
+import java.io.Serializable;
+
+/**
+ * The cells that changed in one step of the board update stream.
+ * Deltas are numbered one after the other; a client that sees a gap asks for a new snapshot.
+ */
+public class BoardDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long sequence;
+    private int[] cells;        // row * cols + col
+    private byte[] states;      // new state of each cell, see BoardSnapshot
+    private int[] values;       // card value of each cell (0 for face-down cells), null when not sent
+
+    /** Creates a delta with the new states of the given cells. */
+    public BoardDelta(long sequence, int[] cells, byte[] states) {
+        this(sequence, cells, states, null);
+    }
+
+    /** Creates a delta that also carries the values of the cells, for clients that do not know them. */
+    public BoardDelta(long sequence, int[] cells, byte[] states, int[] values) {
+        this.sequence = sequence;
+        this.cells = cells;
+        this.states = states;
+        this.values = values;
+    }
+
+    public long getSequence() { return sequence; }
+
+    public int[] getCells() { return cells; }
+
+    public byte[] getStates() { return states; }
+
+    public int[] getValues() { return values; }
+
+    /** Returns text showing the delta details. */
+    @Override
+    public String toString() {
+        return "BoardDelta{sequence=" + sequence + ", cells=" + cells.length + "}";
+    }
+}
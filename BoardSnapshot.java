@@ -0,0 +1,88 @@
+import java.io.Serializable;
+
+/**
+ * The full state of a board at one point of the board update stream.
+ * Sent once when the game starts and again whenever a client asks to resync.
+ */
+public class BoardSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Cell states used by snapshots and deltas. */
+    public static final byte HIDDEN = 0;
+    public static final byte REVEALED = 1;
+    public static final byte MATCHED = 2;
+
+    private long sequence;
+    private int rows;
+    private int cols;
+    private int[] values;       // card values row by row (0 = not known to the client), null when none are known
+    private byte[] states;      // one of HIDDEN, REVEALED, MATCHED per cell, row by row
+
+    /** Creates a snapshot from its parts. */
+    public BoardSnapshot(long sequence, int rows, int cols, int[] values, byte[] states) {
+        this.sequence = sequence;
+        this.rows = rows;
+        this.cols = cols;
+        this.values = values;
+        this.states = states;
+    }
+
+    /**
+     * Takes a snapshot of the board. Without includeValues only the values of face-up cards
+     * are sent, and a board with every card face down is sent without values at all.
+     */
+    public static BoardSnapshot of(GameBoard board, long sequence, boolean includeValues) {
+        int rows = board.getRows();
+        int cols = board.getCols();
+        int[] values = null;
+        byte[] states = new byte[rows * cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int cell = row * cols + col;
+                states[cell] = stateOf(board, row, col);
+                if (includeValues || states[cell] != HIDDEN) {
+                    if (values == null) values = new int[rows * cols];
+                    values[cell] = board.getCardValue(row, col);
+                }
+            }
+        }
+        return new BoardSnapshot(sequence, rows, cols, values, states);
+    }
+
+    /** Returns the state of one cell of the board. */
+    public static byte stateOf(GameBoard board, int row, int col) {
+        if (board.isMatched(row, col)) return MATCHED;
+        if (board.isRevealed(row, col)) return REVEALED;
+        return HIDDEN;
+    }
+
+    /** Builds a board with the values and states of this snapshot. Unknown values are 0. */
+    public GameBoard toBoard() {
+        GameBoard board = new GameBoard(rows, cols, values != null ? values : new int[rows * cols]);
+        for (int cell = 0; cell < states.length; cell++) {
+            applyState(board, cell / cols, cell % cols, states[cell]);
+        }
+        return board;
+    }
+
+    /** Sets one cell of the board to the given state. */
+    public static void applyState(GameBoard board, int row, int col, byte state) {
+        if (state == MATCHED) {
+            board.markAsMatched(row, col);
+        } else if (state == REVEALED) {
+            board.revealCard(row, col);
+        } else {
+            board.hideCard(row, col);
+        }
+    }
+
+    public long getSequence() { return sequence; }
+
+    public int getRows() { return rows; }
+
+    public int getCols() { return cols; }
+
+    public int[] getValues() { return values; }
+
+    public byte[] getStates() { return states; }
+}
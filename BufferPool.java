@@ -0,0 +1,78 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable heap buffers for encoded messages, in power-of-two size classes from
+ * {@value #MIN_SIZE} bytes to {@value #MAX_SIZE} bytes.
+ * <p>
+ * Each class keeps a bounded number of free buffers and a bounded number of bytes, whichever is reached
+ * first, so the large classes keep only a few buffers and the free buffers of all nine classes never
+ * add up to more than nine times the byte bound.
+ * A buffer that is larger than the biggest class, or that comes back to a full class, is left to the
+ * garbage collector; a buffer that is never released is simply not reused.
+ * Heap buffers are used because the blocking connections write from the backing array.
+ */
+public class BufferPool {
+    static final int MIN_SIZE = 256;
+    static final int MAX_SIZE = 64 * 1024;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+
+    private final List<ArrayBlockingQueue<ByteBuffer>> free;   // index = size class
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * Creates a pool that keeps up to buffersPerClass free buffers of each size, and no more than
+     * bytesPerClass bytes of them (but always at least one buffer).
+     */
+    public BufferPool(int buffersPerClass, int bytesPerClass) {
+        free = new ArrayList<>(CLASSES);
+        for (int i = 0; i < CLASSES; i++) {
+            int size = MIN_SIZE << i;
+            free.add(new ArrayBlockingQueue<>(Math.max(1, Math.min(buffersPerClass, bytesPerClass / size))));
+        }
+    }
+
+    /** Returns a cleared buffer with at least the given capacity. */
+    public ByteBuffer acquire(int capacity) {
+        int sizeClass = classOf(capacity);
+        if (sizeClass < CLASSES) {
+            ByteBuffer buffer = free.get(sizeClass).poll();
+            if (buffer != null) {
+                reused.incrementAndGet();
+                buffer.clear();
+                return buffer;
+            }
+        }
+        allocated.incrementAndGet();
+        return ByteBuffer.allocate(sizeClass < CLASSES ? MIN_SIZE << sizeClass : capacity);
+    }
+
+    /** Gives a buffer from {@link #acquire} back for reuse. It must not be used afterwards. */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int sizeClass = classOf(capacity);
+        if (sizeClass < CLASSES && MIN_SIZE << sizeClass == capacity) {
+            free.get(sizeClass).offer(buffer);
+        }
+    }
+
+    /** Returns how many buffers were newly allocated. */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    /** Returns how many buffers were taken from the pool instead of allocated. */
+    public long getReused() {
+        return reused.get();
+    }
+
+    private static int classOf(int capacity) {
+        if (capacity <= MIN_SIZE) return 0;
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,102 @@
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Draws the visible part of the board on one Canvas instead of a Button per card. A change repaints only
+ * the cells it touched, and faces come from a {@link CardAtlas}, so a flip costs a few draw calls with no
+ * layout or CSS pass, even on boards with thousands of cells.
+ * <p>
+ * Cells are addressed by their place in the view, like the buttons of the default board.
+ * Used on the FX thread only.
+ */
+public class CanvasBoardView {
+    private static final Color BORDER = Color.web("#2c5aa0");
+    private static final double BORDER_WIDTH = 2;
+
+    private final Canvas canvas;
+    private final GraphicsContext g;
+    private final CardAtlas atlas;
+    private final int viewRows;
+    private final int viewCols;
+    private final int cardSize;
+    private final int imageSize;
+    private final double gap;
+    private final Font valueFont;
+    private final Font roundFont;
+
+    /** Creates a canvas for viewRows x viewCols cards of cardSize pixels, with faces of imageSize pixels from the atlas. */
+    public CanvasBoardView(int viewRows, int viewCols, int cardSize, int imageSize, double gap, int fontSize, CardAtlas atlas) {
+        this.viewRows = viewRows;
+        this.viewCols = viewCols;
+        this.cardSize = cardSize;
+        this.imageSize = imageSize;
+        this.gap = gap;
+        this.atlas = atlas;
+        this.valueFont = Font.font(null, FontWeight.BOLD, fontSize);
+        this.roundFont = Font.font(null, FontWeight.BOLD, Math.max(10, fontSize - 4));
+        this.canvas = new Canvas(viewCols * (cardSize + gap) - gap, viewRows * (cardSize + gap) - gap);
+        this.g = canvas.getGraphicsContext2D();
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.CENTER);
+    }
+
+    /** Returns the node to put on the screen. */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    /** Returns the view cell (row * viewCols + col) under a point of the canvas, or -1 for a gap or outside. */
+    public int cellAt(double x, double y) {
+        int col = (int) (x / (cardSize + gap));
+        int row = (int) (y / (cardSize + gap));
+        if (x < 0 || y < 0 || row >= viewRows || col >= viewCols
+                || x - col * (cardSize + gap) > cardSize || y - row * (cardSize + gap) > cardSize) {
+            return -1;
+        }
+        return row * viewCols + col;
+    }
+
+    /** Returns the number of columns in the view. */
+    public int getViewCols() {
+        return viewCols;
+    }
+
+    /**
+     * Repaints one card. A face-up card shows its image from the atlas; values past the number of images
+     * get the round number on top, and without images the value itself is drawn.
+     */
+    public void drawCell(int viewRow, int viewCol, CardState state, int cardValue) {
+        if (viewRow < 0 || viewRow >= viewRows || viewCol < 0 || viewCol >= viewCols) return;
+        double x = viewCol * (cardSize + gap);
+        double y = viewRow * (cardSize + gap);
+        g.setFill(state.color);
+        g.fillRect(x, y, cardSize, cardSize);
+        g.setStroke(BORDER);
+        g.setLineWidth(BORDER_WIDTH);
+        g.strokeRect(x + BORDER_WIDTH / 2, y + BORDER_WIDTH / 2, cardSize - BORDER_WIDTH, cardSize - BORDER_WIDTH);
+        if (state == CardState.HIDDEN || cardValue < 1) return;
+
+        double inset = (cardSize - imageSize) / 2.0;
+        if (atlas.draw(g, cardValue, x + inset, y + inset, imageSize)) {
+            int round = (cardValue - 1) / atlas.getImageCount();
+            if (round > 0) {
+                String text = String.valueOf(round + 1);
+                double side = roundFont.getSize() + 4;
+                g.setFill(Color.WHITE);
+                g.fillRect(x + (cardSize - side) / 2, y + (cardSize - side) / 2, side, side);
+                g.setFill(Color.BLACK);
+                g.setFont(roundFont);
+                g.fillText(text, x + cardSize / 2.0, y + cardSize / 2.0);
+            }
+        } else {
+            g.setFill(Color.BLACK);
+            g.setFont(valueFont);
+            g.fillText(String.valueOf(cardValue), x + cardSize / 2.0, y + cardSize / 2.0);
+        }
+    }
+}
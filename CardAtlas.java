@@ -0,0 +1,75 @@
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+
+import java.util.function.IntConsumer;
+
+/**
+ * All card faces of one size packed into a single image, in a square grid of size x size slots.
+ * Drawing a card is then one drawImage call from the same texture, however many cards the board has.
+ * <p>
+ * The faces come from a {@link CardImageCache} and are still decoding when the atlas is made:
+ * each slot is filled when its image is ready, and the listener is told which image arrived.
+ * Used on the FX thread only.
+ */
+public class CardAtlas {
+    private final int size;
+    private final int columns;
+    private final int imageCount;
+    private final WritableImage image;
+    private final boolean[] ready;
+
+    /** Creates the atlas for every image of the cache at the given size. onReady gets the image index of each filled slot. */
+    public CardAtlas(CardImageCache images, int size, IntConsumer onReady) {
+        this.size = size;
+        this.imageCount = images.getImageCount();
+        this.columns = Math.max(1, (int) Math.ceil(Math.sqrt(imageCount)));
+        int rows = Math.max(1, (imageCount + columns - 1) / columns);
+        this.image = new WritableImage(columns * size, rows * size);
+        this.ready = new boolean[imageCount];
+        for (int index = 0; index < imageCount; index++) {
+            Image face = images.get(index + 1, size);
+            int slot = index;
+            if (face.getProgress() >= 1.0) {
+                fill(slot, face);
+            } else {
+                face.progressProperty().addListener((obs, oldValue, newValue) -> {
+                    if (newValue.doubleValue() >= 1.0 && fill(slot, face)) {
+                        onReady.accept(slot);
+                    }
+                });
+            }
+        }
+    }
+
+    /** Copies a decoded face into its slot, centered. Returns false if the image failed to load. */
+    private boolean fill(int slot, Image face) {
+        PixelReader pixels = face.getPixelReader();
+        if (face.isError() || pixels == null) return false;
+        int width = Math.min(size, (int) face.getWidth());
+        int height = Math.min(size, (int) face.getHeight());
+        int x = (slot % columns) * size + (size - width) / 2;
+        int y = (slot / columns) * size + (size - height) / 2;
+        image.getPixelWriter().setPixels(x, y, width, height, pixels, 0, 0);
+        ready[slot] = true;
+        return true;
+    }
+
+    /** Returns the number of faces; card values past it reuse a face. */
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    /**
+     * Draws the face of a card value into a square at (x, y) with the given side.
+     * Returns false, drawing nothing, if there is no face for the value yet.
+     */
+    public boolean draw(GraphicsContext g, int cardValue, double x, double y, double side) {
+        if (imageCount == 0 || cardValue < 1) return false;
+        int slot = (cardValue - 1) % imageCount;
+        if (!ready[slot]) return false;
+        g.drawImage(image, (slot % columns) * size, (slot / columns) * size, size, size, x, y, side, side);
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+import javafx.scene.image.Image;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The card face images of the client. Where each image lives is looked up once; an image is decoded
+ * in the background, already scaled to the size it is shown at, the first time that size is asked for.
+ * Decoded images are kept in a small LRU cache keyed by image and size, so a board resize decodes
+ * again at the new size without keeping every old size around.
+ * <p>
+ * Values past the number of images reuse an image (the controller draws the round number on top),
+ * so the cache key is the image a card value maps to rather than the value itself.
+ * Used on the FX thread only.
+ */
+public class CardImageCache {
+    /** Card images looked for, img1 to img{@value #MAX_IMAGES}. */
+    static final int MAX_IMAGES = 40;
+    /** Decoded images kept; enough for every image at two sizes. */
+    static final int CAPACITY = 2 * MAX_IMAGES;
+
+    private final List<String> sources = new ArrayList<>();
+    private final Map<Long, Image> cache = new LinkedHashMap<Long, Image>(CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Image> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+    private final LatencyHistogram loadMillis = new LatencyHistogram();
+    private long hits;
+    private long misses;
+    private int failed;
+
+    /** Finds the card images in the images folders next to the game or on the classpath. Missing images are skipped. */
+    public CardImageCache() {
+        for (int i = 1; i <= MAX_IMAGES; i++) {
+            String source = resolve("img" + i);
+            if (source != null) {
+                sources.add(source);
+            }
+        }
+    }
+
+    /** Returns the URL of the first existing file or resource for an image name, or null. Nothing is decoded here. */
+    private String resolve(String name) {
+        for (String folder : new String[] {"src/images/", "images/"}) {
+            for (String extension : new String[] {".jpg", ".png"}) {
+                Path path = Paths.get(folder + name + extension);
+                if (Files.isRegularFile(path)) {
+                    return path.toUri().toString();
+                }
+            }
+        }
+        for (String extension : new String[] {".jpg", ".png"}) {
+            URL resource = getClass().getResource("/images/" + name + extension);
+            if (resource != null) {
+                return resource.toExternalForm();
+            }
+        }
+        return null;
+    }
+
+    /** Returns the number of card images found; 0 means cards show their values as numbers. */
+    public int getImageCount() {
+        return sources.size();
+    }
+
+    /**
+     * Returns the image for a card value at the given size. A new image is still decoding when it is returned;
+     * an ImageView showing it draws it once it is ready. Returns null if there are no images.
+     */
+    public Image get(int cardValue, int size) {
+        if (sources.isEmpty() || cardValue < 1) return null;
+        int index = (cardValue - 1) % sources.size();
+        long key = (long) index << 32 | size;
+        Image image = cache.get(key);
+        if (image != null) {
+            hits++;
+            return image;
+        }
+        misses++;
+        image = load(sources.get(index), size);
+        cache.put(key, image);
+        return image;
+    }
+
+    /** Starts decoding the first count images at the given size, so the first reveals do not wait. */
+    public void preload(int count, int size) {
+        for (int value = 1; value <= Math.min(count, sources.size()); value++) {
+            get(value, size);
+        }
+    }
+
+    /** Starts a background decode scaled to fit a size x size square and records how long it takes. */
+    private Image load(String source, int size) {
+        long start = System.nanoTime();
+        Image image = new Image(source, size, size, true, true, true);
+        image.progressProperty().addListener((obs, oldValue, newValue) -> {
+            if (newValue.doubleValue() >= 1.0) {
+                loaded(image, start);
+            }
+        });
+        if (image.getProgress() >= 1.0) {
+            loaded(image, start);
+        }
+        return image;
+    }
+
+    private void loaded(Image image, long start) {
+        if (image.isError()) {
+            failed++;
+        } else {
+            loadMillis.record((System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /** Returns how long images took to decode, in milliseconds. */
+    public LatencyHistogram getLoadMillis() {
+        return loadMillis;
+    }
+
+    /** Returns "images=.. hits=.. misses=.. failed=.. loadMillis p50=.." for the client log. */
+    public String formatStats() {
+        return "images=" + sources.size() + " hits=" + hits + " misses=" + misses + " failed=" + failed
+                + " loadMillis " + loadMillis.formatPercentiles();
+    }
+}
@@ -0,0 +1,33 @@
+import javafx.css.PseudoClass;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+
+/**
+ * How a card on the board is drawn. Card buttons get the state as a CSS pseudo-class of the
+ * {@code card} style class (see MemoryGameView.css); the canvas board paints the same colors itself.
+ */
+public enum CardState {
+    HIDDEN(null, Color.web("#ff69b4")),
+    SELECTED("selected", Color.LIGHTBLUE),          // the card this player is choosing
+    MISMATCHED("mismatched", Color.LIGHTCORAL),     // revealed by the server, about to be hidden again
+    MATCHED("matched", Color.LIGHTGREEN);
+
+    private static final CardState[] STATES = values();
+
+    final PseudoClass pseudoClass;
+    final Color color;
+
+    CardState(String pseudoClass, Color color) {
+        this.pseudoClass = pseudoClass != null ? PseudoClass.getPseudoClass(pseudoClass) : null;
+        this.color = color;
+    }
+
+    /** Turns this state's pseudo-class on for a node and the other states' off. */
+    void applyTo(Node node) {
+        for (CardState state : STATES) {
+            if (state.pseudoClass != null) {
+                node.pseudoClassStateChanged(state.pseudoClass, state == this);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one thread that writes a client's messages to the server. Callers only put a message on a bounded
+ * queue, so the FX thread never blocks on the socket and messages go out in the order they were sent.
+ * Messages that are waiting together are written back to back and flushed once.
+ * <p>
+ * There is one sender per connection, so after a reconnect nothing queued for the old connection reaches
+ * the new one ahead of its resume request. The senders of a client share one {@link Stats}.
+ */
+public class ClientSender {
+    /** Messages that can wait to be written; a player cannot click faster than this. */
+    static final int QUEUE_CAPACITY = 64;
+
+    private final MessageStream stream;
+    private final ArrayBlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private final Stats stats;
+    private volatile boolean running = true;
+
+    /** Send latency (queued to flushed) and the queue depth each message found, over all connections of a client. */
+    public static final class Stats {
+        final LatencyHistogram sendMicros = new LatencyHistogram();
+        final LatencyHistogram queueDepth = new LatencyHistogram();
+
+        /** Returns "sent=.. sendMicros p50=.. queueDepth p50=.." for the client log. */
+        public String format() {
+            return "sent=" + sendMicros.getCount() + " sendMicros " + sendMicros.formatPercentiles()
+                    + " queueDepth " + queueDepth.formatPercentiles();
+        }
+    }
+
+    /** A queued message and what to do if it cannot be sent. */
+    private static final class Pending {
+        final Object message;
+        final Runnable onError;
+        final long queuedNanos = System.nanoTime();
+
+        Pending(Object message, Runnable onError) {
+            this.message = message;
+            this.onError = onError;
+        }
+    }
+
+    /** Starts the writer thread of a connection. */
+    public ClientSender(MessageStream stream, Stats stats) {
+        this.stream = stream;
+        this.stats = stats;
+        this.thread = new Thread(this::writeLoop, "client-sender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a message. onError (may be null) runs on the writer thread if the message cannot be written,
+     * or right away if the queue is full or the sender was closed.
+     */
+    public void send(Object message, Runnable onError) {
+        int depth = queue.size();
+        if (!running || !queue.offer(new Pending(message, onError))) {
+            if (onError != null) onError.run();
+            return;
+        }
+        stats.queueDepth.record(depth);
+    }
+
+    /** Stops the writer. Messages still queued are dropped without calling their error handlers. */
+    public void close() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /** Returns the number of messages waiting to be written. */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(QUEUE_CAPACITY);
+        try {
+            while (running) {
+                Pending first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch);
+                try {
+                    for (Pending pending : batch) {
+                        stream.write(pending.message, false);
+                    }
+                    stream.flush();
+                } catch (IOException e) {
+                    // The connection is gone; the listener notices it too and takes care of reconnecting
+                    running = false;
+                    for (Pending pending : batch) {
+                        if (pending.onError != null) pending.onError.run();
+                    }
+                    return;
+                }
+                long now = System.nanoTime();
+                for (Pending pending : batch) {
+                    stats.sendMicros.record((now - pending.queuedNanos) / 1000);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+}
@@ -0,0 +1,14 @@
+import java.io.IOException;
+
+/** Turns bytes read from a non-blocking channel into complete game objects. */
+public interface FrameDecoder {
+
+    /** Appends bytes received from the channel. */
+    void append(byte[] data, int offset, int length);
+
+    /** Returns the next complete object, or null if more bytes are needed. */
+    Object next() throws IOException, ClassNotFoundException;
+
+    /** Returns how many bytes the object last returned by {@link #next()} took on the wire. */
+    int lastFrameLength();
+}
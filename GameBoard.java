@@ -1,68 +1,93 @@
 
 import java.io.Serializable;
-import java.util.*;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * This class represents the board of a memory game.
  * It keeps track of the cards, their values, and their states (revealed or matched).
  */
 public class GameBoard implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     private int rows;
     private int cols;
-    private int[][] board;           // card values
-    private boolean[][] revealed;    // temporarily revealed cards
-    private boolean[][] matched;     // permanently matched cards
+    private short[] values;          // card values, row by row (index = row * cols + col)
+    private long[] revealed;         // bitset of temporarily revealed cards
+    private long[] matched;          // bitset of permanently matched cards
+    private int matchedCount;        // number of matched cards, so the finish check needs no scan
+    private long seed;               // the shuffle's seed; 0 for boards received over the network
 
-    /** Creates the game board and fills it with shuffled pairs. */
+    /** Creates the game board and fills it with pairs shuffled from a random seed. */
     public GameBoard(int rows, int cols) {
+        this(rows, cols, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates the game board and fills it with pairs shuffled from the given seed.
+     * The same size and seed always give the same board, on any JVM.
+     */
+    public GameBoard(int rows, int cols, long seed) {
+        this(rows, cols, (int[]) null);
+        this.seed = seed;
+        initializeBoard();
+    }
+
+    /** Creates a board with the given card values, listed row by row. Used for boards received over the network. */
+    public GameBoard(int rows, int cols, int[] values) {
         this.rows = rows;
         this.cols = cols;
-        this.board = new int[rows][cols];
-        this.revealed = new boolean[rows][cols];
-        this.matched = new boolean[rows][cols];
-        initializeBoard();
+        this.values = new short[rows * cols];
+        this.revealed = new long[(rows * cols + 63) >>> 6];
+        this.matched = new long[revealed.length];
+        if (values != null) {
+            for (int i = 0; i < this.values.length; i++) {
+                this.values[i] = (short) values[i];
+            }
+        }
     }
 
-    /** Prepares the board with shuffled matching pairs. */
+    /**
+     * Prepares the board with shuffled matching pairs, shuffling the value array in place (Fisher-Yates).
+     * java.util.Random is used because its sequence for a given seed is fixed by its specification.
+     */
     private void initializeBoard() {
-        List<Integer> numbers = new ArrayList<>();
         int totalPairs = (rows * cols) / 2;
-
-        for (int i = 1; i <= totalPairs; i++) {
-            numbers.add(i);
-            numbers.add(i);
+        for (int i = 0; i < totalPairs * 2; i++) {
+            values[i] = (short) (i / 2 + 1);
         }
 
-        Collections.shuffle(numbers);
-
-        int index = 0;
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                board[row][col] = numbers.get(index++);
-            }
+        Random random = new Random(seed);
+        for (int i = totalPairs * 2 - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            short swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
         }
     }
 
     /** Makes a card at this position temporarily visible. */
     public void revealCard(int row, int col) {
         if (isValidPosition(row, col)) {
-            revealed[row][col] = true;
+            set(revealed, row * cols + col);
         }
     }
 
     /** Hides a revealed card again. */
     public void hideCard(int row, int col) {
         if (isValidPosition(row, col)) {
-            revealed[row][col] = false;
+            clear(revealed, row * cols + col);
         }
     }
 
     /** Marks the card as matched and keeps it revealed. */
     public void markAsMatched(int row, int col) {
         if (isValidPosition(row, col)) {
-            matched[row][col] = true;
-            revealed[row][col] = true;
+            int cell = row * cols + col;
+            if (!get(matched, cell)) {
+                set(matched, cell);
+                matchedCount++;
+            }
+            set(revealed, cell);
         }
     }
 
@@ -70,27 +95,23 @@ public class GameBoard implements Serializable {
     public boolean isMatch(int row1, int col1, int row2, int col2) {
         if (!isValidPosition(row1, col1) || !isValidPosition(row2, col2)) return false;
         if (row1 == row2 && col1 == col2) return false;
-        if (matched[row1][col1] || matched[row2][col2]) return false;
+        int cell1 = row1 * cols + col1;
+        int cell2 = row2 * cols + col2;
+        if (get(matched, cell1) || get(matched, cell2)) return false;
 
-        return board[row1][col1] == board[row2][col2];
+        return values[cell1] == values[cell2];
     }
 
     /** Returns true if the card is not revealed or matched. */
     public boolean canSelectCard(int row, int col) {
         if (!isValidPosition(row, col)) return false;
-        if (matched[row][col]) return false;
-        if (revealed[row][col]) return false;
-        return true;
+        int cell = row * cols + col;
+        return !get(matched, cell) && !get(revealed, cell);
     }
 
     /** Checks if all cards on the board are matched. */
     public boolean isGameFinished() {
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                if (!matched[row][col]) return false;
-            }
-        }
-        return true;
+        return matchedCount == values.length;
     }
 
     /** Checks if the card is inside the board range. */
@@ -100,17 +121,30 @@ public class GameBoard implements Serializable {
 
     /** Hides all revealed cards that are not matched. */
     public void resetRevealedCards() {
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                if (!matched[row][col]) {
-                    revealed[row][col] = false;
-                }
-            }
+        for (int i = 0; i < revealed.length; i++) {
+            revealed[i] &= matched[i];
         }
     }
 
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static void clear(long[] bits, int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+
     // -------- Getters --------
 
+    /** Returns the seed the board was shuffled from; 0 for a board received over the network. */
+    public long getSeed() {
+        return seed;
+    }
+
     /** Returns number of rows. */
     public int getRows() {
         return rows;
@@ -124,19 +158,26 @@ public class GameBoard implements Serializable {
     /** Returns the value of the card in this position. */
     public int getCardValue(int row, int col) {
         if (!isValidPosition(row, col)) return -1;
-        return board[row][col];
+        return values[row * cols + col];
+    }
+
+    /** Sets the value of a card. Used by clients that learn values only when cards are revealed. */
+    public void setCardValue(int row, int col, int value) {
+        if (isValidPosition(row, col)) {
+            values[row * cols + col] = (short) value;
+        }
     }
 
     /** Returns true if the card is revealed. */
     public boolean isRevealed(int row, int col) {
         if (!isValidPosition(row, col)) return false;
-        return revealed[row][col];
+        return get(revealed, row * cols + col);
     }
 
     /** Returns true if the card is already matched. */
     public boolean isMatched(int row, int col) {
         if (!isValidPosition(row, col)) return false;
-        return matched[row][col];
+        return get(matched, row * cols + col);
     }
 
     /** Checks if a card is available to be picked. */
@@ -5,18 +5,16 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.scene.image.Image;
+import javafx.scene.control.ScrollBar;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 
 import java.io.*;
 import java.net.Socket;
 import java.net.URL;
 import java.util.ResourceBundle;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /** Controls the game screen, connects to the server, and manages game logic. */
 public class GameController implements Initializable {
@@ -29,38 +27,55 @@ public class GameController implements Initializable {
     @FXML private GridPane gameGrid;
     @FXML private Button newGameButton;
     @FXML private Button disconnectButton;
+    @FXML private ScrollBar rowScrollBar;
+    @FXML private ScrollBar colScrollBar;
 
     // === Game State ===
     private boolean isMyTurn = false;
     private int selectedCards = 0;
     private int selectedRow1, selectedCol1, selectedRow2, selectedCol2;
     private int myScore = 0;
-    private int opponentScore = 0;
-    private int playerNumber;
-    private boolean gameActive = true;
+    private int opponentScore = 0;          // best score among the other players
+    private int playerNumber;               // 0 while watching a game as a spectator
+    private int turnPlayer;                 // the player whose turn it is, shown to spectators
+    private volatile boolean gameActive = true;
     private boolean waitingForCardsToClose = false;
+    private long boardSequence = -1;        // sequence number of the last board update applied
+    private boolean resyncRequested = false;
 
     // === Connection ===
     private String serverHost = "localhost";
     private int serverPort = 8080;
     private Socket socket;
-    private ObjectOutputStream output;
-    private ObjectInputStream input;
+    private MessageStream connection;
+    private volatile ClientSender sender;   // writes everything after the join or resume request
+    private final ClientSender.Stats sendStats = new ClientSender.Stats();
+    private final MessageDispatcher dispatcher = new MessageDispatcher(this::handleServerMessage);
+    private MessageStream.Format wireFormat = MessageStream.Format.BINARY;
+    private int rating = Matchmaker.DEFAULT_RATING;
+    private boolean spectator;              // sends SPECTATE instead of JOIN_GAME and never plays
+    private Integer watchedGame;            // game to watch, null for the newest one
+    private volatile String resumeToken;    // lets this player take its seat back if the connection drops
+    private static final int RESUME_ATTEMPTS = 5;
+    private static final long RESUME_BACKOFF_MILLIS = 500;
 
     // === Other ===
-    private ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
     private Stage primaryStage;
     private GameBoard gameBoard;
-    private Button[][] cardButtons;
+    private Button[][] cardButtons;     // one button per visible cell; large boards reuse them while scrolling
+    private int viewRows, viewCols;     // size of the visible part of the board
+    private int rowOffset, colOffset;   // board position shown by the top-left button
+    private boolean canvasRenderer;     // draw the board on one canvas instead of buttons
+    private CanvasBoardView canvasView;
 
     // === Images ===
-    private Image[] cardImages;
-    private Image cardBackImage;
+    private CardImageCache cardImages;
 
     // === Responsive Design Variables ===
     private int cardSize = 100;
     private int imageSize = 80;
     private int fontSize = 18;
+    private String sizeClass = "card-large";    // style class with the font size for the current card size
 
     /** Called automatically when the controller loads. Sets initial labels. */
     @Override
@@ -68,53 +83,10 @@ public class GameController implements Initializable {
         statusLabel.setText("ממתין לחיבור לשרת...");
         scoreLabel.setText("הניקוד שלי: 0 | היריב: 0");
         playerLabel.setText("שחקן: -");
-        loadImages();
-    }
-
-    /** Loads all the card images from the images folder. */
-    private void loadImages() {
-        try {
-            cardImages = new Image[40];
-            int loadedImages = 0;
-
-            for (int i = 1; i <= 40; i++) {
-                try {
-                    String[] possiblePaths = {
-                            "file:src/images/img" + i + ".jpg",
-                            "file:src/images/img" + i + ".png",
-                            "file:images/img" + i + ".jpg",
-                            "file:images/img" + i + ".png",
-                            "/images/img" + i + ".jpg",
-                            "/images/img" + i + ".png"
-                    };
-
-                    Image image = null;
-                    for (String path : possiblePaths) {
-                        try {
-                            if (path.startsWith("file:")) {
-                                image = new Image(path);
-                            } else {
-                                image = new Image(getClass().getResourceAsStream(path));
-                            }
-
-                            if (image != null && !image.isError()) {
-                                cardImages[i-1] = image;
-                                loadedImages++;
-                                break;
-                            }
-                        } catch (Exception ignored) {
-                        }
-                    }
-                } catch (Exception e) {
-                }
-            }
-
-            if (loadedImages == 0) {
-                cardImages = null;
-            }
-
-        } catch (Exception e) {
-            cardImages = null;
+        cardImages = new CardImageCache();
+        if (rowScrollBar != null && colScrollBar != null) {
+            rowScrollBar.valueProperty().addListener((obs, oldValue, newValue) -> onBoardScrolled());
+            colScrollBar.valueProperty().addListener((obs, oldValue, newValue) -> onBoardScrolled());
         }
     }
 
@@ -131,22 +103,30 @@ public class GameController implements Initializable {
 
         imageSize = (int)(cardSize * 0.8);
 
+        // Boards that do not fit at the smallest card size are shown through a scrolling window
+        viewRows = Math.min(rows, Math.max(1, maxBoardHeight / (cardSize + 5)));
+        viewCols = Math.min(cols, Math.max(1, maxBoardWidth / (cardSize + 5)));
+
         if (cardSize >= 100) {
             fontSize = 18;
+            sizeClass = "card-large";
         } else if (cardSize >= 80) {
             fontSize = 14;
+            sizeClass = "card-medium";
         } else {
             fontSize = 12;
+            sizeClass = "card-small";
         }
 
-        adjustWindowSize(rows, cols);
+        adjustWindowSize(viewRows, viewCols);
+        cardImages.preload(rows * cols / 2, imageSize);
     }
 
     /** Changes the window size to fit the board. */
     private void adjustWindowSize(int rows, int cols) {
         if (primaryStage != null) {
-            int windowWidth = cols * (cardSize + 5) + 100;
-            int windowHeight = rows * (cardSize + 5) + 250;
+            int windowWidth = cols * (cardSize + 5) + 130;
+            int windowHeight = rows * (cardSize + 5) + 280;
 
             windowWidth = Math.max(600, Math.min(windowWidth, 1200));
             windowHeight = Math.max(500, Math.min(windowHeight, 900));
@@ -162,6 +142,27 @@ public class GameController implements Initializable {
         this.serverPort = port;
     }
 
+    /** Sets the wire format to use. Binary falls back to Java serialization if the server does not support it. */
+    public void setWireFormat(MessageStream.Format format) {
+        this.wireFormat = format;
+    }
+
+    /** Sets the rating announced to the server, which uses it to pick an opponent of similar skill. */
+    public void setRating(int rating) {
+        this.rating = rating;
+    }
+
+    /** Watches the given game, or the newest one if gameId is null, on a read-only board instead of playing. */
+    public void setSpectator(Integer gameId) {
+        this.spectator = true;
+        this.watchedGame = gameId;
+    }
+
+    /** Draws the board on a single canvas from a texture atlas instead of a button per card. */
+    public void setCanvasRenderer(boolean canvasRenderer) {
+        this.canvasRenderer = canvasRenderer;
+    }
+
     /** Sets the main window and adjusts its size. */
     public void setPrimaryStage(Stage stage) {
         this.primaryStage = stage;
@@ -173,13 +174,18 @@ public class GameController implements Initializable {
     public void connectToServer() {
         Thread connectionThread = new Thread(() -> {
             try {
-                socket = new Socket(serverHost, serverPort);
-                output = new ObjectOutputStream(socket.getOutputStream());
-                output.flush();
-                input = new ObjectInputStream(socket.getInputStream());
+                openConnection();
+                if (spectator) {
+                    GameMessage request = new GameMessage(GameMessage.MessageType.SPECTATE);
+                    request.setData(watchedGame);
+                    connection.write(request);
+                } else {
+                    connection.write(new GameMessage(GameMessage.MessageType.JOIN_GAME, (Object) rating));
+                }
+                startSender();
 
                 Platform.runLater(() -> {
-                    statusLabel.setText("מחובר לשרת! ממתין לשחקן נוסף...");
+                    statusLabel.setText(spectator ? "מחובר לשרת! ממתין למשחק לצפייה..." : "מחובר לשרת! ממתין לשחקן נוסף...");
                 });
 
                 startMessageListener();
@@ -192,18 +198,51 @@ public class GameController implements Initializable {
         connectionThread.start();
     }
 
+    /** Opens the socket and does the handshake. */
+    private void openConnection() throws IOException {
+        socket = new Socket(serverHost, serverPort);
+        try {
+            connection = MessageStream.connect(socket, wireFormat);
+        } catch (StreamCorruptedException e) {
+            // Older server without the binary protocol: reconnect with Java serialization
+            socket.close();
+            socket = new Socket(serverHost, serverPort);
+            connection = MessageStream.connect(socket, MessageStream.Format.JAVA);
+        }
+    }
+
+    /** Replaces the sender of the previous connection with one for the current connection. */
+    private void startSender() {
+        ClientSender previous = sender;
+        if (previous != null) previous.close();
+        sender = new ClientSender(connection, sendStats);
+    }
+
     /** Starts a thread to listen for messages from the server. */
     private void startMessageListener() {
+        Socket listenSocket = socket;
+        MessageStream stream = connection;
+        ClientSender replies = sender;
         Thread listenerThread = new Thread(() -> {
             try {
-                while (gameActive && socket != null && !socket.isClosed()) {
-                    Object message = input.readObject();
-                    if (message instanceof GameMessage) {
-                        Platform.runLater(() -> handleServerMessage((GameMessage) message));
+                while (gameActive && !listenSocket.isClosed()) {
+                    Object message = stream.read();
+                    if (message instanceof GameMessage && ((GameMessage) message).getType() == GameMessage.MessageType.PING) {
+                        // Answered right here so the server measures the network, not the UI thread
+                        replies.send(new GameMessage(GameMessage.MessageType.PONG, ((GameMessage) message).getData()), null);
+                    } else if (message instanceof GameMessage) {
+                        GameMessage gameMessage = (GameMessage) message;
+                        if (gameMessage.getType() == GameMessage.MessageType.GAME_END) {
+                            // The session is over, a drop after this is not worth a resume
+                            resumeToken = null;
+                        }
+                        dispatcher.post(gameMessage);
                     }
                 }
             } catch (Exception e) {
-                if (gameActive) {
+                if (gameActive && resumeToken != null && listenSocket == socket) {
+                    resumeSession();
+                } else if (gameActive) {
                     Platform.runLater(() -> statusLabel.setText("החיבור לשרת נותק"));
                 }
             }
@@ -212,14 +251,55 @@ public class GameController implements Initializable {
         listenerThread.start();
     }
 
+    /**
+     * Reconnects after the connection dropped during a game and asks the server for this player's seat.
+     * Runs on the listener thread; gives up after a few attempts with a growing pause between them.
+     */
+    private void resumeSession() {
+        closeQuietly(socket);
+        Platform.runLater(() -> statusLabel.setText("החיבור לשרת נותק, מתחבר מחדש..."));
+        for (int attempt = 0; attempt < RESUME_ATTEMPTS && gameActive; attempt++) {
+            try {
+                Thread.sleep(RESUME_BACKOFF_MILLIS << attempt);
+                openConnection();
+                connection.write(new GameMessage(GameMessage.MessageType.RESUME_REQUEST, resumeToken));
+                startSender();
+                startMessageListener();
+                return;
+            } catch (IOException e) {
+                closeQuietly(socket);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (gameActive) {
+            Platform.runLater(() -> {
+                gameActive = false;
+                statusLabel.setText("החיבור לשרת נותק");
+                newGameButton.setVisible(true);
+            });
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
     /** Handles messages received from the server. */
     private void handleServerMessage(GameMessage message) {
         switch (message.getType()) {
             case GAME_START:
                 handleGameStart(message);
                 break;
-            case BOARD_DATA:
-                handleBoardData(message);
+            case BOARD_SNAPSHOT:
+                handleBoardSnapshot(message);
+                break;
+            case BOARD_DELTA:
+                handleBoardDelta(message);
                 break;
             case PLAYER_TURN:
                 handlePlayerTurn(message);
@@ -230,48 +310,127 @@ public class GameController implements Initializable {
             case GAME_END:
                 handleGameEnd(message);
                 break;
+            case RESUME_FAILED:
+                handleResumeFailed(message);
+                break;
+            case PLAYER_LEFT:
+                statusLabel.setText("שחקן " + message.getPlayerNumber() + " התנתק, ממתין לחזרתו...");
+                break;
+            case PLAYER_RESUMED:
+                statusLabel.setText("שחקן " + message.getPlayerNumber() + " חזר למשחק. " + turnStatus());
+                break;
         }
     }
 
-    /** Handles starting the game and shows player number. */
+    /**
+     * Handles starting the game and shows player number. The same message arrives again after a resume,
+     * with the scores so far.
+     */
     private void handleGameStart(GameMessage message) {
         playerNumber = message.getPlayerNumber();
-        playerLabel.setText("שחקן: " + playerNumber);
+        playerLabel.setText(playerNumber == 0 ? "צופה" : "שחקן: " + playerNumber);
         statusLabel.setText(message.getMessage());
         gameActive = true;
+        if (message.getData() instanceof GameStartInfo) {
+            GameStartInfo info = (GameStartInfo) message.getData();
+            resumeToken = info.getResumeToken();
+            int[] scores = info.getScores();
+            if (scores != null && scores.length >= 2) {
+                updateScores(scores);
+            }
+        }
+        waitingForCardsToClose = false;
     }
 
-    /** Creates the game board using data sent by the server. */
-    private void handleBoardData(GameMessage message) {
-        gameBoard = (GameBoard) message.getData();
-        createGameBoard();
+    /** Replaces the local board with a snapshot from the server and redraws every card. */
+    private void handleBoardSnapshot(GameMessage message) {
+        BoardSnapshot snapshot = (BoardSnapshot) message.getData();
+        boolean sameSize = gameBoard != null && isBoardCreated()
+                && gameBoard.getRows() == snapshot.getRows() && gameBoard.getCols() == snapshot.getCols();
+        gameBoard = snapshot.toBoard();
+        boardSequence = snapshot.getSequence();
+        resyncRequested = false;
+        if (!sameSize) {
+            createGameBoard();
+        }
+        resetCardSelection();
+        renderView();
+    }
+
+    /** Applies the next board delta, or asks the server for a snapshot if a delta was missed. */
+    private void handleBoardDelta(GameMessage message) {
+        BoardDelta delta = (BoardDelta) message.getData();
+        if (gameBoard == null || delta.getSequence() != boardSequence + 1) {
+            if (delta.getSequence() > boardSequence) {
+                requestResync();
+            }
+            return;
+        }
+        boardSequence = delta.getSequence();
+
+        boolean cardsHidden = false;
+        int cols = gameBoard.getCols();
+        int[] values = delta.getValues();
+        for (int i = 0; i < delta.getCells().length; i++) {
+            int row = delta.getCells()[i] / cols;
+            int col = delta.getCells()[i] % cols;
+            if (values != null && values[i] > 0) {
+                gameBoard.setCardValue(row, col, values[i]);
+            }
+            BoardSnapshot.applyState(gameBoard, row, col, delta.getStates()[i]);
+            renderCell(row, col);
+            cardsHidden |= delta.getStates()[i] == BoardSnapshot.HIDDEN;
+        }
+
+        // Mismatched cards were closed by the server
+        if (cardsHidden && waitingForCardsToClose) {
+            waitingForCardsToClose = false;
+            statusLabel.setText(isMyTurn ? "התור שלך! בחר שני קלפים." : turnStatus());
+        }
+    }
+
+    /** Asks the server for a new board snapshot, once until it arrives. */
+    private void requestResync() {
+        if (resyncRequested) return;
+        resyncRequested = true;
+        GameMessage request = new GameMessage(GameMessage.MessageType.RESYNC_REQUEST, (Object) boardSequence);
+        request.setPlayerNumber(playerNumber);
+        sendInBackground(request, () -> resyncRequested = false);
     }
 
     /** Updates the UI when it's this player's turn. */
     private void handlePlayerTurn(GameMessage message) {
-        isMyTurn = (message.getPlayerNumber() == playerNumber);
-        statusLabel.setText(isMyTurn && !waitingForCardsToClose ? "התור שלך! בחר שני קלפים." : "תור היריב, המתן...");
+        turnPlayer = message.getPlayerNumber();
+        isMyTurn = playerNumber != 0 && turnPlayer == playerNumber;
+        statusLabel.setText(isMyTurn && !waitingForCardsToClose ? "התור שלך! בחר שני קלפים." : turnStatus());
+    }
+
+    /** Returns the status line for a turn that is not this player's; a spectator sees whose turn it is. */
+    private String turnStatus() {
+        if (playerNumber == 0) {
+            return turnPlayer > 0 ? "תור שחקן " + turnPlayer : "צופה במשחק";
+        }
+        return isMyTurn ? "התור שלך!" : "תור היריב, המתן...";
     }
 
     /** Handles the result of a turn and updates the board and scores. */
     private void handleTurnResult(GameMessage message) {
         TurnResult result = (TurnResult) message.getData();
         CardSelection selection = result.getSelection();
-
-        updateBoardDisplay(selection, result.isMatch());
-
-        if (playerNumber == 1) {
-            myScore = result.getPlayer1Score();
-            opponentScore = result.getPlayer2Score();
-        } else {
-            myScore = result.getPlayer2Score();
-            opponentScore = result.getPlayer1Score();
+        if (gameBoard != null && result.getValue1() > 0) {
+            gameBoard.setCardValue(selection.getRow1(), selection.getCol1(), result.getValue1());
+            gameBoard.setCardValue(selection.getRow2(), selection.getCol2(), result.getValue2());
         }
 
-        scoreLabel.setText("הניקוד שלי: " + myScore + " | היריב: " + opponentScore);
+        updateScores(result.getScores());
         resetCardSelection();
+        turnPlayer = result.getNextPlayer();
         String statusMessage;
-        if (result.isMatch()) {
+        if (playerNumber == 0) {
+            statusMessage = "שחקן " + selection.getPlayerNumber()
+                    + (result.isMatch() ? " מצא זוג תואם." : " לא מצא התאמה. ממתין לסגירת הקלפים...");
+            waitingForCardsToClose = !result.isMatch();
+        } else if (result.isMatch()) {
             statusMessage = selection.getPlayerNumber() == playerNumber
                     ? "מצוין! מצאת זוג תואם. התור שלך שוב."
                     : "היריב מצא זוג תואם. " + (result.getNextPlayer() == playerNumber ? "התור שלך." : "המתן...");
@@ -288,22 +447,13 @@ public class GameController implements Initializable {
 
         statusLabel.setText(statusMessage);
 
-        if (!result.isMatch()) {
-            scheduler.schedule(() -> Platform.runLater(() -> {
-                hideCards(selection);
-                waitingForCardsToClose = false;
-                if (isMyTurn) {
-                    statusLabel.setText("התור שלך! בחר שני קלפים.");
-                } else {
-                    statusLabel.setText("תור היריב, המתן...");
-                }
-            }), 2, TimeUnit.SECONDS);
-        }
-
         if (result.isGameFinished()) {
             gameActive = false;
+            resumeToken = null;
             newGameButton.setVisible(true);
-            String endMessage = myScore > opponentScore
+            String endMessage = playerNumber == 0
+                    ? "המשחק הסתיים! הניקוד הסופי: " + scoreLabel.getText()
+                    : myScore > opponentScore
                     ? "המשחק הסתיים! ניצחת! הניקוד הסופי: " + myScore + " - " + opponentScore
                     : myScore < opponentScore
                     ? "המשחק הסתיים! הפסדת! הניקוד הסופי: " + myScore + " - " + opponentScore
@@ -312,6 +462,41 @@ public class GameController implements Initializable {
         }
     }
 
+    /** Called when the server could not give this player its seat back. */
+    private void handleResumeFailed(GameMessage message) {
+        gameActive = false;
+        resumeToken = null;
+        statusLabel.setText("החיבור לשרת נותק");
+        newGameButton.setVisible(true);
+        showAlert("החזרה למשחק נכשלה", message.getMessage());
+    }
+
+    /**
+     * Shows this player's score and the others'. With more than one opponent, the best of them
+     * is the score to beat. A spectator sees every player's score in order.
+     */
+    private void updateScores(int[] scores) {
+        if (playerNumber == 0 || playerNumber > scores.length) {
+            StringBuilder all = new StringBuilder();
+            for (int i = 0; i < scores.length; i++) {
+                if (i > 0) all.append(" | ");
+                all.append("שחקן ").append(i + 1).append(": ").append(scores[i]);
+            }
+            scoreLabel.setText(all.toString());
+            return;
+        }
+        myScore = scores[playerNumber - 1];
+        opponentScore = 0;
+        StringBuilder others = new StringBuilder();
+        for (int i = 0; i < scores.length; i++) {
+            if (i == playerNumber - 1) continue;
+            opponentScore = Math.max(opponentScore, scores[i]);
+            if (others.length() > 0) others.append(", ");
+            others.append(scores[i]);
+        }
+        scoreLabel.setText("הניקוד שלי: " + myScore + (scores.length > 2 ? " | היריבים: " : " | היריב: ") + others);
+    }
+
     /** Called when the game ends. Shows the final result. */
     private void handleGameEnd(GameMessage message) {
         gameActive = false;
@@ -325,7 +510,10 @@ public class GameController implements Initializable {
         selectedRow1 = selectedCol1 = selectedRow2 = selectedCol2 = -1;
     }
 
-    /** Builds the game board grid with buttons for each card. */
+    /**
+     * Builds the game board grid with a button for each visible card.
+     * A board larger than the window gets scroll bars, and the same buttons show different cards as it scrolls.
+     */
     private void createGameBoard() {
         gameGrid.getChildren().clear();
         int rows = gameBoard.getRows();
@@ -333,31 +521,132 @@ public class GameController implements Initializable {
 
         calculateResponsiveSizes(rows, cols);
 
-        cardButtons = new Button[rows][cols];
+        rowOffset = colOffset = 0;
 
         double gap = Math.max(2, cardSize * 0.05);
         gameGrid.setHgap(gap);
         gameGrid.setVgap(gap);
 
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
+        if (canvasRenderer) {
+            createCanvasBoard(gap);
+        } else {
+            createCardButtons();
+        }
+
+        setUpScrollBar(rowScrollBar, rows, viewRows);
+        setUpScrollBar(colScrollBar, cols, viewCols);
+        gameGrid.setOnScroll(e -> {
+            // Mouse wheel scrolls rows, shift + wheel (or a horizontal wheel) scrolls columns
+            boolean horizontal = e.isShiftDown() || e.getDeltaY() == 0;
+            ScrollBar bar = horizontal ? colScrollBar : rowScrollBar;
+            double delta = horizontal ? e.getDeltaX() + e.getDeltaY() : e.getDeltaY();
+            if (bar != null && bar.isVisible() && delta != 0) {
+                bar.setValue(Math.max(bar.getMin(), Math.min(bar.getMax(), bar.getValue() - Math.signum(delta))));
+            }
+        });
+    }
+
+    /** Creates a button for each visible card. */
+    private void createCardButtons() {
+        cardButtons = new Button[viewRows][viewCols];
+        for (int row = 0; row < viewRows; row++) {
+            for (int col = 0; col < viewCols; col++) {
                 Button cardButton = new Button();
                 cardButton.setPrefSize(cardSize, cardSize);
                 cardButton.setMinSize(cardSize, cardSize);
                 cardButton.setMaxSize(cardSize, cardSize);
-
-                cardButton.setStyle("-fx-background-color: #ff69b4; -fx-border-color: #2c5aa0; -fx-border-width: 2; -fx-font-size: " + fontSize + "px;");
+                cardButton.getStyleClass().addAll("card", sizeClass);
 
                 final int r = row, c = col;
-                cardButton.setOnAction(e -> onCardClicked(r, c));
+                cardButton.setOnAction(e -> onCardClicked(r + rowOffset, c + colOffset));
                 cardButtons[row][col] = cardButton;
                 gameGrid.add(cardButton, col, row);
             }
         }
     }
 
+    /** Creates the canvas that draws the visible cards, with an atlas of the card faces at the current size. */
+    private void createCanvasBoard(double gap) {
+        CardAtlas atlas = new CardAtlas(cardImages, imageSize, this::renderFace);
+        canvasView = new CanvasBoardView(viewRows, viewCols, cardSize, imageSize, gap, fontSize, atlas);
+        canvasView.getCanvas().setOnMouseClicked(e -> {
+            int cell = canvasView.cellAt(e.getX(), e.getY());
+            if (cell >= 0) {
+                onCardClicked(cell / viewCols + rowOffset, cell % viewCols + colOffset);
+            }
+        });
+        gameGrid.add(canvasView.getCanvas(), 0, 0);
+    }
+
+    /** Repaints the face-up cards that show the given image, once the atlas received it. */
+    private void renderFace(int image) {
+        if (gameBoard == null || canvasView == null) return;
+        int imageCount = cardImages.getImageCount();
+        for (int row = rowOffset; row < rowOffset + viewRows; row++) {
+            for (int col = colOffset; col < colOffset + viewCols; col++) {
+                int value = gameBoard.getCardValue(row, col);
+                if (value >= 1 && (value - 1) % imageCount == image
+                        && (gameBoard.isMatched(row, col) || gameBoard.isRevealed(row, col))) {
+                    renderCell(row, col);
+                }
+            }
+        }
+    }
+
+    /** Returns true once the cards of the current board are on the screen. */
+    private boolean isBoardCreated() {
+        return cardButtons != null || canvasView != null;
+    }
+
+    /** Shows a scroll bar for a board dimension that does not fit in the window. */
+    private void setUpScrollBar(ScrollBar bar, int size, int visible) {
+        if (bar == null) return;
+        boolean needed = size > visible;
+        bar.setVisible(needed);
+        bar.setManaged(needed);
+        bar.setMin(0);
+        bar.setMax(Math.max(0, size - visible));
+        bar.setValue(0);
+        bar.setVisibleAmount(visible);
+        bar.setUnitIncrement(1);
+        bar.setBlockIncrement(visible);
+    }
+
+    /** Redraws the cards when one of the board scroll bars moves. */
+    private void onBoardScrolled() {
+        int newRowOffset = (int) Math.round(rowScrollBar.getValue());
+        int newColOffset = (int) Math.round(colScrollBar.getValue());
+        if (newRowOffset != rowOffset || newColOffset != colOffset) {
+            rowOffset = newRowOffset;
+            colOffset = newColOffset;
+            renderView();
+        }
+    }
+
+    /** Redraws every visible card. */
+    private void renderView() {
+        if (gameBoard == null || !isBoardCreated()) return;
+        for (int row = rowOffset; row < rowOffset + viewRows; row++) {
+            for (int col = colOffset; col < colOffset + viewCols; col++) {
+                renderCell(row, col);
+            }
+        }
+    }
+
+    /** Returns the button that currently shows this board position, or null if it is scrolled out of view. */
+    private Button buttonAt(int row, int col) {
+        int viewRow = row - rowOffset;
+        int viewCol = col - colOffset;
+        if (viewRow < 0 || viewRow >= viewRows || viewCol < 0 || viewCol >= viewCols) return null;
+        return cardButtons[viewRow][viewCol];
+    }
+
     /** Called when a card is clicked. Checks if it's a valid move and sends it to the server. */
     private void onCardClicked(int row, int col) {
+        if (playerNumber == 0) {
+            statusLabel.setText("אתה צופה במשחק, אי אפשר לבחור קלפים.");
+            return;
+        }
         if (!gameActive || !isMyTurn || waitingForCardsToClose) {
             if (waitingForCardsToClose) {
                 statusLabel.setText("המתן עד שהקלפים ייסגרו...");
@@ -376,14 +665,24 @@ public class GameController implements Initializable {
         }
 
         selectedCards++;
-        gameBoard.revealCard(row, col);
-
-        showCardImage(cardButtons[row][col], gameBoard.getCardValue(row, col));
-        cardButtons[row][col].setStyle("-fx-background-color: lightblue; -fx-border-color: #2c5aa0; -fx-border-width: 2; -fx-font-size: " + fontSize + "px;");
+        // With a hidden board the value is unknown until the server turns the card over in a delta
+        boolean valueKnown = gameBoard.getCardValue(row, col) > 0;
+        if (valueKnown && canvasView != null) {
+            gameBoard.revealCard(row, col);
+            canvasView.drawCell(row - rowOffset, col - colOffset, CardState.SELECTED, gameBoard.getCardValue(row, col));
+        } else if (valueKnown) {
+            Button button = buttonAt(row, col);
+            gameBoard.revealCard(row, col);
+            showCardImage(button, gameBoard.getCardValue(row, col));
+            CardState.SELECTED.applyTo(button);
+        }
 
         if (selectedCards == 1) {
             selectedRow1 = row;
             selectedCol1 = col;
+            if (!valueKnown) {
+                requestCardReveal(row, col);
+            }
             statusLabel.setText("בחר קלף שני.");
         } else {
             selectedRow2 = row;
@@ -395,19 +694,29 @@ public class GameController implements Initializable {
         }
     }
 
-    /** Shows the image of a card on the button. */
+    /**
+     * Shows the face of a card on the button. Values past the number of images reuse an image
+     * with the round number on top, so every pair still has its own face.
+     */
     private void showCardImage(Button button, int cardValue) {
-        if (cardImages != null && cardValue >= 1 && cardValue <= 40) {
-            ImageView imageView = new ImageView(cardImages[cardValue - 1]);
+        int imageCount = cardImages.getImageCount();
+        if (imageCount > 0 && cardValue >= 1) {
+            ImageView imageView = new ImageView(cardImages.get(cardValue, imageSize));
             imageView.setFitWidth(imageSize);
             imageView.setFitHeight(imageSize);
             imageView.setPreserveRatio(true);
             imageView.setSmooth(true);
-            button.setGraphic(imageView);
+            int round = (cardValue - 1) / imageCount;
+            if (round == 0) {
+                button.setGraphic(imageView);
+            } else {
+                Label roundLabel = new Label(String.valueOf(round + 1));
+                roundLabel.getStyleClass().add("round-label");
+                button.setGraphic(new StackPane(imageView, roundLabel));
+            }
             button.setText("");
         } else {
             button.setText(String.valueOf(cardValue));
-            button.setStyle(button.getStyle() + " -fx-font-weight: bold;");
         }
     }
 
@@ -415,60 +724,64 @@ public class GameController implements Initializable {
     private void hideCardImage(Button button) {
         button.setGraphic(null);
         button.setText("");
-        button.setStyle("-fx-background-color: #ff69b4; -fx-border-color: #2c5aa0; -fx-border-width: 2; -fx-font-size: " + fontSize + "px;");
+        CardState.HIDDEN.applyTo(button);
     }
 
-    /** Sends the selected cards to the server using a new thread. */
-    private void sendCardSelection(CardSelection selection) {
-        Thread sendThread = new Thread(() -> {
-            try {
-                output.writeObject(selection);
-                output.flush();
-            } catch (IOException e) {
-                Platform.runLater(() -> {
-                    statusLabel.setText("שגיאה בשליחת הבחירה לשרת.");
-                    isMyTurn = true;
-                });
-            }
+    /** Asks the server to turn over the first card of the turn. */
+    private void requestCardReveal(int row, int col) {
+        GameMessage request = new GameMessage(GameMessage.MessageType.CARD_REVEAL, (Object) (row * gameBoard.getCols() + col));
+        request.setPlayerNumber(playerNumber);
+        sendInBackground(request, () -> {
+            statusLabel.setText("שגיאה בשליחת הבחירה לשרת.");
+            resetCardSelection();
         });
-        sendThread.setDaemon(true);
-        sendThread.start();
     }
 
-    /** Shows the two selected cards and colors them by match result. */
-    private void updateBoardDisplay(CardSelection selection, boolean isMatch) {
-        int row1 = selection.getRow1();
-        int col1 = selection.getCol1();
-        int row2 = selection.getRow2();
-        int col2 = selection.getCol2();
-
-        showCardImage(cardButtons[row1][col1], gameBoard.getCardValue(row1, col1));
-        showCardImage(cardButtons[row2][col2], gameBoard.getCardValue(row2, col2));
-
-        String color = isMatch ? "lightgreen" : "lightcoral";
-        cardButtons[row1][col1].setStyle("-fx-background-color: " + color + "; -fx-border-color: #2c5aa0; -fx-border-width: 2; -fx-font-size: " + fontSize + "px;");
-        cardButtons[row2][col2].setStyle("-fx-background-color: " + color + "; -fx-border-color: #2c5aa0; -fx-border-width: 2; -fx-font-size: " + fontSize + "px;");
+    /** Sends the selected cards to the server. */
+    private void sendCardSelection(CardSelection selection) {
+        sendInBackground(selection, () -> {
+            statusLabel.setText("שגיאה בשליחת הבחירה לשרת.");
+            isMyTurn = true;
+        });
+    }
 
-        if (isMatch) {
-            gameBoard.revealCard(row1, col1);
-            gameBoard.revealCard(row2, col2);
-            gameBoard.markAsMatched(row1, col1);
-            gameBoard.markAsMatched(row2, col2);
+    /** Queues a message for the sender thread. onError runs on the FX thread if sending fails. */
+    private void sendInBackground(Object message, Runnable onError) {
+        ClientSender current = sender;
+        if (current == null) {
+            onError.run();
+            return;
         }
+        current.send(message, () -> Platform.runLater(onError));
     }
 
-    /** Hides the selected cards if they do not match. */
-    private void hideCards(CardSelection selection) {
-        int row1 = selection.getRow1();
-        int col1 = selection.getCol1();
-        int row2 = selection.getRow2();
-        int col2 = selection.getCol2();
-
-        hideCardImage(cardButtons[row1][col1]);
-        hideCardImage(cardButtons[row2][col2]);
+    /**
+     * Draws one card according to its state on the local board:
+     * matched cards are green, the card this player is choosing is blue,
+     * other cards revealed by the server (a mismatch on display) are red.
+     */
+    private void renderCell(int row, int col) {
+        if (canvasView != null) {
+            canvasView.drawCell(row - rowOffset, col - colOffset, cellState(row, col), gameBoard.getCardValue(row, col));
+            return;
+        }
+        Button button = buttonAt(row, col);
+        if (button == null) return;
+        CardState state = cellState(row, col);
+        if (state != CardState.HIDDEN) {
+            showCardImage(button, gameBoard.getCardValue(row, col));
+            state.applyTo(button);
+        } else {
+            hideCardImage(button);
+        }
+    }
 
-        gameBoard.hideCard(row1, col1);
-        gameBoard.hideCard(row2, col2);
+    /** Returns how a card is drawn: matched, the card being chosen, revealed by the server (a mismatch), or hidden. */
+    private CardState cellState(int row, int col) {
+        if (gameBoard.isMatched(row, col)) return CardState.MATCHED;
+        if (!gameBoard.isRevealed(row, col)) return CardState.HIDDEN;
+        boolean choosing = selectedCards == 1 && row == selectedRow1 && col == selectedCol1;
+        return choosing ? CardState.SELECTED : CardState.MISMATCHED;
     }
 
     /** Starts a new game and reconnects to the server. */
@@ -485,6 +798,9 @@ public class GameController implements Initializable {
     @FXML
     private void onDisconnectClicked() {
         disconnect();
+        System.out.println("תמונות הקלפים: " + cardImages.formatStats());
+        System.out.println("שליחה לשרת: " + sendStats.format());
+        System.out.println("עדכוני ממשק: " + dispatcher.formatStats());
         Platform.exit();
     }
 
@@ -492,10 +808,10 @@ public class GameController implements Initializable {
     private void disconnect() {
         try {
             gameActive = false;
-            if (output != null) output.close();
-            if (input != null) input.close();
+            resumeToken = null;
+            if (sender != null) sender.close();
+            if (connection != null) connection.close();
             if (socket != null && !socket.isClosed()) socket.close();
-            if (scheduler != null) scheduler.shutdown();
         } catch (IOException e) {
             System.err.println("שגיאה בניתוק: " + e.getMessage());
         }
@@ -503,13 +819,28 @@ public class GameController implements Initializable {
 
     /** Resets the game screen and variables for a new start. */
     private void resetGame() {
+        dispatcher.clear();
         gameActive = true;
+        resumeToken = null;
         selectedCards = 0;
         myScore = opponentScore = 0;
         isMyTurn = false;
+        turnPlayer = 0;
         waitingForCardsToClose = false;
         gameBoard = null;
         cardButtons = null;
+        canvasView = null;
+        rowOffset = colOffset = 0;
+        if (rowScrollBar != null) {
+            rowScrollBar.setVisible(false);
+            rowScrollBar.setManaged(false);
+        }
+        if (colScrollBar != null) {
+            colScrollBar.setVisible(false);
+            colScrollBar.setManaged(false);
+        }
+        boardSequence = -1;
+        resyncRequested = false;
 
         scoreLabel.setText("הניקוד שלי: 0 | היריב: 0");
         playerLabel.setText("שחקן: -");
@@ -517,8 +848,6 @@ public class GameController implements Initializable {
         newGameButton.setVisible(false);
         if (gameGrid != null) gameGrid.getChildren().clear();
 
-        if (scheduler != null) scheduler.shutdown();
-        scheduler = Executors.newScheduledThreadPool(1);
         resetCardSelection();
     }
 
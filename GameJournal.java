@@ -0,0 +1,376 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only log of every game the server runs: its start, every card selection a player sent,
+ * every turn result and its end. It is kept so that a game can be replayed later with {@link JournalReader}.
+ * <p>
+ * Sessions only put {@link JournalRecord}s on a bounded queue and never wait: if the queue is full the record
+ * is dropped and counted. A single writer thread appends the records to a memory-mapped segment file and
+ * forces the segment to disk at most every {@value #FSYNC_INTERVAL_MILLIS} ms, so one fsync covers every
+ * record that arrived in between. A crash can lose at most that much of the log; a record that was torn
+ * on the way is found by its checksum when the segment is recovered.
+ * <p>
+ * A segment holds {@value #SEGMENT_RECORDS} records. It is sealed when it is full or an hour old: it is forced
+ * and given an index file that lists where each game's records are. A mapped file cannot be cut on every platform
+ * (Windows refuses while the mapping lives, and Java cannot unmap it), so a segment keeps its full size while
+ * the server runs and readers stop at its first empty record. Segments of earlier runs, which this process never
+ * mapped, are cut to their records at startup. Sealed segments older than the retention time are deleted.
+ */
+public class GameJournal {
+    /** Records that can wait for the writer before new ones are dropped. */
+    static final int QUEUE_CAPACITY = 65_536;
+    /** Records in one segment file (4 MB). */
+    static final int SEGMENT_RECORDS = 65_536;
+    /** The longest time a written record stays unforced. */
+    static final long FSYNC_INTERVAL_MILLIS = 100;
+    /** A segment older than this is sealed even if it is not full. */
+    static final long ROLL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    private static final int BATCH_SIZE = 1024;
+
+    private final Path directory;
+    private final long retentionMillis;
+    private final ArrayBlockingQueue<JournalRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong nextGameId = new AtomicLong(1);
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Used by the writer thread only
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private Path segmentPath;
+    private int segmentNumber;
+    private long segmentOpened;
+    private boolean dirty;
+    private long lastForce;
+    private long nextCompaction;
+
+    /** The journal of one game. Its records are numbered in the order the session made them. */
+    public final class Game {
+        private final long id;
+        private final AtomicInteger sequence = new AtomicInteger();
+
+        private Game(long id) {
+            this.id = id;
+        }
+
+        /** Returns the game's id in the journal. */
+        public long getId() {
+            return id;
+        }
+
+        /** Records a card selection sent by a player, whether or not the session accepts it. */
+        public void selection(int sender, CardSelection selection) {
+            append(JournalRecord.selection(id, System.currentTimeMillis(), sender, selection));
+        }
+
+        /** Records the result of an accepted turn. */
+        public void turn(TurnResult result) {
+            append(JournalRecord.result(id, System.currentTimeMillis(), result));
+        }
+
+        /** Records the end of the game. finished is false if the game was stopped before the board was cleared. */
+        public void ended(int[] scores, boolean finished, int winner) {
+            append(JournalRecord.end(id, System.currentTimeMillis(), scores, finished, winner));
+        }
+
+        /** Numbers and queues a record in one step, so the log holds a game's records in sequence order. */
+        private synchronized void append(JournalRecord record) {
+            record.setSequence(sequence.getAndIncrement());
+            offer(record);
+        }
+    }
+
+    private GameJournal(Path directory, long retentionMillis) {
+        this.directory = directory;
+        this.retentionMillis = retentionMillis;
+        this.writer = ServerThreads.platform("journal-writer").newThread(this::writeLoop);
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed. A segment left unsealed by a crash is recovered
+     * and sealed, and new records go to a new segment. Sealed segments are kept for retentionMillis.
+     */
+    public static GameJournal open(Path directory, long retentionMillis) throws IOException {
+        Files.createDirectories(directory);
+        GameJournal journal = new GameJournal(directory, retentionMillis);
+        journal.recover();
+        journal.compact();
+        journal.openSegment(journal.segmentNumber + 1);
+        journal.writer.start();
+        return journal;
+    }
+
+    /** Starts the journal of a new game and records its board size and players. */
+    public Game gameStarted(int rows, int cols, int players, long seed) {
+        Game game = new Game(nextGameId.getAndIncrement());
+        game.append(JournalRecord.start(game.id, System.currentTimeMillis(), rows, cols, players, seed));
+        return game;
+    }
+
+    /** Returns the number of records written to a segment. */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /** Returns the number of records dropped because the writer could not keep up. */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /** Returns the number of times a segment was forced to disk. */
+    public long getFsyncs() {
+        return fsyncs.get();
+    }
+
+    /** Writes what is still queued, seals the current segment and stops the writer. Later records are dropped. */
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void offer(JournalRecord record) {
+        if (!running || !queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /** The writer thread: appends records in batches, forces, rolls and compacts. */
+    private void writeLoop() {
+        List<JournalRecord> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (running || !queue.isEmpty()) {
+                JournalRecord first = queue.poll(FSYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    for (JournalRecord record : batch) {
+                        write(record);
+                    }
+                    batch.clear();
+                }
+                long now = System.currentTimeMillis();
+                if (dirty && now - lastForce >= FSYNC_INTERVAL_MILLIS) {
+                    force();
+                }
+                if (now - segmentOpened >= ROLL_MILLIS) {
+                    roll();
+                }
+                if (now >= nextCompaction) {
+                    compact();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("שגיאה ביומן המשחקים: " + e.getMessage());
+            e.printStackTrace();
+            running = false;
+        } finally {
+            try {
+                sealSegment();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void write(JournalRecord record) throws IOException {
+        if (!segment.hasRemaining()) {
+            roll();
+        }
+        record.writeTo(segment);
+        written.incrementAndGet();
+        dirty = true;
+    }
+
+    private void force() {
+        segment.force();
+        fsyncs.incrementAndGet();
+        dirty = false;
+        lastForce = System.currentTimeMillis();
+    }
+
+    /** Seals the current segment and starts the next one. An empty segment is kept, it just starts its hour again. */
+    private void roll() throws IOException {
+        if (segment.position() == 0) {
+            segmentOpened = System.currentTimeMillis();
+            return;
+        }
+        sealSegment();
+        openSegment(segmentNumber + 1);
+    }
+
+    private void openSegment(int number) throws IOException {
+        segmentNumber = number;
+        segmentPath = directory.resolve(segmentName(number) + SEGMENT_SUFFIX);
+        channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_RECORDS * JournalRecord.SIZE);
+        segmentOpened = System.currentTimeMillis();
+    }
+
+    /** Forces the current segment and writes its index. The file is cut to its records at the next startup. */
+    private void sealSegment() throws IOException {
+        if (channel == null) return;
+        force();
+        int records = segment.position() / JournalRecord.SIZE;
+        writeIndex(segmentPath, segment, records);
+        channel.close();
+        channel = null;
+        segment = null;
+    }
+
+    /**
+     * Finds the last segment number and the highest game id used so far. A segment without an index was
+     * being written when the server stopped: its records are read up to the first empty or torn one,
+     * and it is sealed with that many records. Segments are read without mapping them, so they can be cut.
+     */
+    private void recover() throws IOException {
+        long maxGameId = 0;
+        for (Path path : listSegments(directory)) {
+            segmentNumber = Math.max(segmentNumber, segmentNumber(path));
+            Path index = indexOf(path);
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (Files.exists(index)) {
+                    long[] ids = readIndexIds(index);
+                    if (ids.length > 0) maxGameId = Math.max(maxGameId, ids[ids.length - 1]);
+                    trim(path, file, ids.length);
+                    continue;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) file.size());
+                while (buffer.hasRemaining() && file.read(buffer) >= 0) {
+                    // read the whole segment
+                }
+                int records = 0;
+                int limit = (int) (file.size() / JournalRecord.SIZE);
+                JournalRecord record;
+                while (records < limit && (record = JournalRecord.readFrom(buffer, records * JournalRecord.SIZE)) != null) {
+                    maxGameId = Math.max(maxGameId, record.getGameId());
+                    records++;
+                }
+                System.out.println("יומן המשחקים: שוחזרו " + records + " רשומות מ-" + path.getFileName());
+                writeIndex(path, buffer, records);
+                trim(path, file, records);
+            }
+        }
+        nextGameId.set(maxGameId + 1);
+    }
+
+    /**
+     * Cuts a sealed segment to the records it holds. If it cannot be cut now (on Windows, while a JournalReader
+     * has it mapped) it keeps its size, which readers handle, and is tried again at the next startup.
+     */
+    private static void trim(Path path, FileChannel file, int records) {
+        long size = (long) records * JournalRecord.SIZE;
+        try {
+            if (file.size() > size) file.truncate(size);
+        } catch (IOException e) {
+            System.err.println("יומן המשחקים: לא ניתן לקצר את " + path.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /** Deletes sealed segments, and their indexes, that are older than the retention time. */
+    private void compact() {
+        nextCompaction = System.currentTimeMillis() + ROLL_MILLIS;
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        try {
+            for (Path path : listSegments(directory)) {
+                Path index = indexOf(path);
+                if (path.equals(segmentPath) || !Files.exists(index)) continue;
+                if (Files.getLastModifiedTime(index).toMillis() < cutoff) {
+                    Files.deleteIfExists(path);
+                    Files.deleteIfExists(index);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("שגיאה בניקוי יומן המשחקים: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the index of a segment: a (long game id, int record number) pair for every record, sorted by game id
+     * and then by position, so the records of one game are found with a binary search.
+     */
+    private static void writeIndex(Path segmentPath, ByteBuffer buffer, int records) throws IOException {
+        Integer[] order = new Integer[records];
+        long[] ids = new long[records];
+        for (int i = 0; i < records; i++) {
+            order[i] = i;
+            ids[i] = buffer.getLong(i * JournalRecord.SIZE);
+        }
+        Arrays.sort(order, (a, b) -> ids[a] != ids[b] ? Long.compare(ids[a], ids[b]) : Integer.compare(a, b));
+        ByteBuffer index = ByteBuffer.allocate(records * JournalReader.INDEX_ENTRY_SIZE);
+        for (Integer record : order) {
+            index.putLong(ids[record]).putInt(record);
+        }
+        index.flip();
+        Path temp = segmentPath.resolveSibling(segmentPath.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (index.hasRemaining()) file.write(index);
+            file.force(true);
+        }
+        Files.move(temp, indexOf(segmentPath), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long[] readIndexIds(Path index) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(index));
+        long[] ids = new long[bytes.remaining() / JournalReader.INDEX_ENTRY_SIZE];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = bytes.getLong(i * JournalReader.INDEX_ENTRY_SIZE);
+        }
+        return ids;
+    }
+
+    /** Returns the segment files of a journal directory in the order they were written. */
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "journal-*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        segments.sort((a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)));
+        return segments;
+    }
+
+    /** Returns the index file of a segment. */
+    static Path indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private static String segmentName(int number) {
+        return String.format("journal-%08d", number);
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring("journal-".length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
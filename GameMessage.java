@@ -14,7 +14,18 @@ public class GameMessage implements Serializable {
         CARD_SELECTION,     // A card was selected
         TURN_RESULT,        // The result of the move
         GAME_END,           // When the game ends
-        NEW_GAME_REQUEST    // Player wants to start a new game
+        NEW_GAME_REQUEST,   // Player wants to start a new game
+        BOARD_SNAPSHOT,     // Full board state with a sequence number
+        BOARD_DELTA,        // Cells that changed since the previous sequence number
+        RESYNC_REQUEST,     // Client missed a delta and wants a new snapshot
+        CARD_REVEAL,        // Client asks the server to turn over one card (hidden board)
+        PING,               // Server measures the round-trip time; data is a timestamp to echo
+        PONG,               // Client answer to PING with the same data
+        RESUME_REQUEST,     // Client on a new connection takes back its seat; message is the resume token
+        RESUME_FAILED,      // Server could not resume the session; message is the reason
+        PLAYER_LEFT,        // The opponent's connection dropped, the server waits for it to return
+        PLAYER_RESUMED,     // The opponent is back on a new connection
+        SPECTATE            // Client watches a game instead of playing; data is the session number, none for the newest game
     }
 
     private MessageType type;
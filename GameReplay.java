@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rebuilds a game from its board seed and the card selections of its turns, with no server, network or timers.
+ * It follows the rules of GameSession.processCardSelection: a match scores and keeps the turn, a mismatch passes
+ * the turn on. Mismatched cards are hidden again at once, since nobody has to see them.
+ * <p>
+ * A turn is a few array lookups with no allocation, so a replay runs at millions of turns per second. It is used
+ * to reproduce a reported game and to check that a journal matches what the rules say should have happened.
+ * <p>
+ * Usage: {@code java GameReplay <journalDir> <gameId>} replays a game from the journal and checks every turn.
+ */
+public class GameReplay {
+    private final GameBoard board;
+    private final int[] scores;
+    private int currentPlayer = 1;
+    private int turns;
+
+    /** Starts a game on the board that the size and seed give. */
+    public GameReplay(int rows, int cols, int players, long seed) {
+        if (players < GameSession.MIN_PLAYERS || players > GameSession.MAX_PLAYERS) {
+            throw new IllegalArgumentException("a game needs " + GameSession.MIN_PLAYERS + " to " + GameSession.MAX_PLAYERS + " players");
+        }
+        this.board = new GameBoard(rows, cols, seed);
+        this.scores = new int[players];
+    }
+
+    /**
+     * Plays one turn and returns true if it was a match. A turn the session would have ignored
+     * (wrong player, a card that is not face down, or the game is over) throws IllegalArgumentException.
+     */
+    public boolean play(int player, int row1, int col1, int row2, int col2) {
+        if (player != currentPlayer || !board.canSelectCard(row1, col1) || !board.canSelectCard(row2, col2)) {
+            throw new IllegalArgumentException("turn " + (turns + 1) + " is not valid: player " + player
+                    + " (" + row1 + "," + col1 + ")-(" + row2 + "," + col2 + ")");
+        }
+        turns++;
+        if (board.isMatch(row1, col1, row2, col2)) {
+            board.markAsMatched(row1, col1);
+            board.markAsMatched(row2, col2);
+            scores[currentPlayer - 1]++;
+            return true;
+        }
+        currentPlayer = currentPlayer % scores.length + 1;
+        return false;
+    }
+
+    /** Plays one turn and returns the TurnResult the session would have broadcast. */
+    public TurnResult play(CardSelection selection) {
+        boolean match = play(selection.getPlayerNumber(), selection.getRow1(), selection.getCol1(),
+                selection.getRow2(), selection.getCol2());
+        TurnResult result = new TurnResult(selection, match, scores.clone(), currentPlayer, board.isGameFinished());
+        result.setValues(board.getCardValue(selection.getRow1(), selection.getCol1()),
+                board.getCardValue(selection.getRow2(), selection.getCol2()));
+        return result;
+    }
+
+    /** Returns the board as it is after the turns played so far. */
+    public GameBoard getBoard() {
+        return board;
+    }
+
+    /** Returns the scores, indexed by player number - 1. */
+    public int[] getScores() {
+        return scores.clone();
+    }
+
+    /** Returns the player whose turn it is. */
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /** Returns the number of turns played. */
+    public int getTurns() {
+        return turns;
+    }
+
+    /** Returns true once every card is matched. */
+    public boolean isFinished() {
+        return board.isGameFinished();
+    }
+
+    /**
+     * Replays the turns of a journaled game and compares each one with the result the server recorded.
+     * Returns the sequence number of the first record the replay disagrees with, or -1 if the whole game agrees.
+     * Selections the session rejected are skipped; only turn results are replayed.
+     */
+    public static int verify(List<JournalRecord> records) {
+        if (records.isEmpty() || records.get(0).getKind() != JournalRecord.START) {
+            throw new IllegalArgumentException("the records do not start with the start of a game");
+        }
+        JournalRecord start = records.get(0);
+        GameReplay replay = new GameReplay(start.getRows(), start.getCols(), start.getPlayer(), start.getSeed());
+        for (JournalRecord record : records) {
+            if (record.getKind() == JournalRecord.RESULT) {
+                TurnResult recorded = record.toTurnResult();
+                TurnResult replayed;
+                try {
+                    replayed = replay.play(recorded.getSelection());
+                } catch (IllegalArgumentException e) {
+                    return record.getSequence();
+                }
+                if (!sameResult(recorded, replayed)) {
+                    return record.getSequence();
+                }
+            } else if (record.getKind() == JournalRecord.END) {
+                if (!Arrays.equals(record.getScores(), replay.scores) || record.isFinished() != replay.isFinished()) {
+                    return record.getSequence();
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean sameResult(TurnResult a, TurnResult b) {
+        return a.isMatch() == b.isMatch()
+                && a.getNextPlayer() == b.getNextPlayer()
+                && a.isGameFinished() == b.isGameFinished()
+                && a.getValue1() == b.getValue1()
+                && a.getValue2() == b.getValue2()
+                && Arrays.equals(a.getScores(), b.getScores());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("שימוש: java GameReplay <תיקיית יומן> <מספר משחק>");
+            System.exit(1);
+        }
+        long gameId = Long.parseLong(args[1]);
+        List<JournalRecord> records = new JournalReader(Paths.get(args[0])).readGame(gameId);
+        if (records.isEmpty()) {
+            System.err.println("משחק " + gameId + " לא נמצא ביומן");
+            System.exit(1);
+        }
+        int mismatch = verify(records);
+        if (mismatch < 0) {
+            System.out.println("משחק " + gameId + ": ההרצה החוזרת תואמת את היומן (" + records.size() + " רשומות)");
+        } else {
+            System.out.println("משחק " + gameId + ": ההרצה החוזרת שונה מהיומן ברשומה #" + mismatch);
+            for (JournalRecord record : records) {
+                if (record.getSequence() == mismatch) System.out.println(record);
+            }
+            System.exit(2);
+        }
+    }
+}
@@ -1,211 +1,534 @@
-
 import java.io.*;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-/** A session that handles the game between two players. */
+/**
+ * A session that handles the game between {@value #MIN_PLAYERS} to {@value #MAX_PLAYERS} players, who take turns
+ * in player number order. Messages for everyone are encoded once and the same bytes go to every player.
+ * <p>
+ * If a player's connection drops during the game, the session keeps its board, scores and turn
+ * for the server's resume grace period. The player can take its seat back on a new connection
+ * with the resume token it got in GAME_START; if it does not come back in time, the game ends.
+ * <p>
+ * Spectators can watch a running game. They get its current state when they join and then
+ * every broadcast, through a {@link SpectatorFeed} that never lets them slow the game down.
+ */
 public class GameSession implements Runnable {
-    private Socket player1Socket;
-    private Socket player2Socket;
-    private ObjectInputStream player1Input;
-    private ObjectOutputStream player1Output;
-    private ObjectInputStream player2Input;
-    private ObjectOutputStream player2Output;
+    /** Smallest number of players in a session. */
+    public static final int MIN_PLAYERS = 2;
+    /** Largest number of players in a session. */
+    public static final int MAX_PLAYERS = 8;
+
+    private final PlayerConnection[] players;   // index = player number - 1; null while the player is disconnected
+    private final int[] scores;
 
     private GameBoard gameBoard;
     private int currentPlayer;
-    private int player1Score;
-    private int player2Score;
-    private boolean gameActive;
-
-    /** Sets up the game session, board, and connection with both players. */
-    public GameSession(Socket player1, Socket player2, int rows, int cols) {
-        this.player1Socket = player1;
-        this.player2Socket = player2;
+    private volatile boolean gameActive;
+    private boolean pendingHide;     // mismatched cards are still shown, selections are rejected
+    private long boardSequence;      // sequence number of the last board snapshot or delta sent
+    private int revealedCell = -1;   // first card turned over by CARD_REVEAL, waiting for the second one
+    private boolean eventDriven;     // input arrives through onPlayerMessage instead of reader threads
+
+    private final String[] resumeTokens;
+    private final ScheduledFuture<?>[] graceTimers;
+
+    private final SpectatorFeed spectators;
+    private final ServerContext context;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private int id;
+    private volatile GameJournal.Game journal;    // null if the server keeps no journal
+
+    /**
+     * Sets up the game session over connections that were already opened by the server.
+     * The first connection is player 1 and starts the game.
+     */
+    public GameSession(List<? extends PlayerConnection> players, int rows, int cols, ServerContext context) {
+        if (players.size() < MIN_PLAYERS || players.size() > MAX_PLAYERS) {
+            throw new IllegalArgumentException("a session needs " + MIN_PLAYERS + " to " + MAX_PLAYERS + " players");
+        }
+        this.context = context;
+        this.players = players.toArray(new PlayerConnection[0]);
+        this.scores = new int[this.players.length];
+        this.resumeTokens = new String[this.players.length];
+        this.graceTimers = new ScheduledFuture<?>[this.players.length];
         this.gameBoard = new GameBoard(rows, cols);
         this.currentPlayer = 1;
-        this.player1Score = 0;
-        this.player2Score = 0;
         this.gameActive = true;
+        this.spectators = new SpectatorFeed(this::createCatchUpMessages, context.getSpectatorWriters(),
+                context.getBufferPool(), context.getMetrics());
+    }
 
-        try {
-            player1Output = new ObjectOutputStream(player1.getOutputStream());
-            player1Output.flush();
-            player1Input = new ObjectInputStream(player1.getInputStream());
-
-            player2Output = new ObjectOutputStream(player2.getOutputStream());
-            player2Output.flush();
-            player2Input = new ObjectInputStream(player2.getInputStream());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /** Sets up a two-player game session over connections that were already opened by the server. */
+    public GameSession(PlayerConnection player1, PlayerConnection player2, int rows, int cols, ServerContext context) {
+        this(Arrays.asList(player1, player2), rows, cols, context);
     }
 
-    /** Starts the game and runs threads for each player. */
+    /** Starts the game and a reader thread for each player. */
     @Override
     public void run() {
+        register();
+        startGame();
+        for (int playerNumber = 1; playerNumber <= players.length; playerNumber++) {
+            startReader(playerNumber, players[playerNumber - 1]);
+        }
+    }
+
+    /**
+     * Starts a game whose player input is delivered by an event loop
+     * through {@link #onPlayerMessage} instead of reader threads.
+     */
+    public void startEventDriven() {
+        eventDriven = true;
+        register();
+        startGame();
+    }
+
+    /** Takes the next session number and makes the session visible to spectators. */
+    private synchronized void register() {
+        id = context.sessionStarted();
+        context.getSessionRegistry().addSession(this);
+        if (context.getJournal() != null) {
+            journal = context.getJournal().gameStarted(gameBoard.getRows(), gameBoard.getCols(), players.length,
+                    gameBoard.getSeed());
+        }
+    }
+
+    /** Returns the session's number, 0 until the game started. */
+    public synchronized int getId() {
+        return id;
+    }
+
+    /** Sends game start messages and board to all players. */
+    private synchronized void startGame() {
+        for (int playerNumber = 1; playerNumber <= players.length; playerNumber++) {
+            resumeTokens[playerNumber - 1] = context.getSessionRegistry().register(this, playerNumber);
+            sendTo(playerNumber, createStartMessage(playerNumber));
+        }
+        broadcast(createSnapshotMessage());
+        sendPlayerTurnMessage();
+    }
+
+    /** Creates the GAME_START message of one player, with its resume token and the current scores. */
+    private GameMessage createStartMessage(int playerNumber) {
+        GameStartInfo startInfo = new GameStartInfo(context.getRevealDelayMillis());
+        startInfo.setResumeToken(resumeTokens[playerNumber - 1]);
+        startInfo.setScores(scores.clone());
+        startInfo.setSeed(publicSeed());
+        GameMessage startMsg = new GameMessage(GameMessage.MessageType.GAME_START, startInfo);
+        startMsg.setPlayerNumber(playerNumber);
+        return startMsg;
+    }
+
+    /**
+     * Returns the board's seed for GAME_START, or null with a hidden board: the seed gives away every card,
+     * so then it is only kept in the journal.
+     */
+    private Long publicSeed() {
+        return context.isHiddenBoard() ? null : gameBoard.getSeed();
+    }
+
+    /**
+     * Lets a spectator watch the game. It gets the start message, a board snapshot and whose turn it is,
+     * then every message the players get. Returns false if the game is already over.
+     */
+    public synchronized boolean watch(PlayerConnection connection) {
+        if (!gameActive || closed.get()) {
+            return false;
+        }
+        spectators.add(connection);
+        return true;
+    }
+
+    /** Creates the messages that show a spectator the game as it is now. Called with the session's lock held. */
+    private List<GameMessage> createCatchUpMessages() {
+        GameStartInfo startInfo = new GameStartInfo(context.getRevealDelayMillis());
+        startInfo.setScores(scores.clone());
+        startInfo.setSeed(publicSeed());
+        GameMessage startMsg = new GameMessage(GameMessage.MessageType.GAME_START, startInfo);
+        startMsg.setMessage("צופה במשחק " + id);
+        GameMessage turnMsg = new GameMessage(GameMessage.MessageType.PLAYER_TURN);
+        turnMsg.setPlayerNumber(currentPlayer);
+        List<GameMessage> messages = new ArrayList<>(3);
+        messages.add(startMsg);
+        messages.add(createSnapshotMessage());
+        messages.add(turnMsg);
+        return messages;
+    }
+
+    private void startReader(int playerNumber, PlayerConnection connection) {
+        context.getSessionThreads().newThread(() -> handlePlayer(playerNumber, connection)).start();
+    }
+
+    /** Handles messages from the player (card selection) until its connection fails or is replaced. */
+    private void handlePlayer(int playerNumber, PlayerConnection connection) {
         try {
-            startGame();
-            Thread player1Thread = new Thread(() -> handlePlayer(1));
-            Thread player2Thread = new Thread(() -> handlePlayer(2));
-            player1Thread.start();
-            player2Thread.start();
-            player1Thread.join();
-            player2Thread.join();
+            while (true) {
+                onPlayerMessage(playerNumber, connection.receive());
+            }
         } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            closeConnections();
+            onPlayerDisconnected(playerNumber, connection);
         }
     }
 
-    /** Sends game start messages and board to both players. */
-    private void startGame() {
-        try {
-            GameMessage startMsg1 = new GameMessage(GameMessage.MessageType.GAME_START);
-            startMsg1.setPlayerNumber(1);
-            player1Output.writeObject(startMsg1);
-            player1Output.flush();
-
-            GameMessage startMsg2 = new GameMessage(GameMessage.MessageType.GAME_START);
-            startMsg2.setPlayerNumber(2);
-            player2Output.writeObject(startMsg2);
-            player2Output.flush();
-
-            GameMessage boardMsg = new GameMessage(GameMessage.MessageType.BOARD_DATA, gameBoard);
-            player1Output.writeObject(boardMsg);
-            player1Output.flush();
-            player2Output.writeObject(boardMsg);
-            player2Output.flush();
+    /**
+     * Handles one object received from a player. Only the current player's card selections and reveals
+     * are processed; resync requests are answered at any time. The player is always the one whose
+     * connection the message came in on, whatever number a card selection claims.
+     */
+    public void onPlayerMessage(int playerNumber, Object obj) {
+        if (obj instanceof CardSelection) {
+            CardSelection selection = (CardSelection) obj;
+            selection.setPlayerNumber(playerNumber);
+            GameJournal.Game log = journal;
+            if (log != null) log.selection(playerNumber, selection);
+            if (playerNumber == currentPlayer) {
+                processCardSelection(selection);
+            }
+        } else if (obj instanceof GameMessage) {
+            GameMessage message = (GameMessage) obj;
+            if (message.getType() == GameMessage.MessageType.RESYNC_REQUEST) {
+                sendSnapshot(playerNumber);
+            } else if (message.getType() == GameMessage.MessageType.CARD_REVEAL
+                    && message.getData() instanceof Integer && playerNumber == currentPlayer) {
+                processCardReveal((Integer) message.getData());
+            }
+        }
+    }
 
-            sendPlayerTurnMessage();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Turns over the first card of a turn and shows its value to all players.
+     * Clients that do not know the card values ask for this instead of revealing the card themselves.
+     */
+    private synchronized void processCardReveal(int cell) {
+        int cols = gameBoard.getCols();
+        int row = cell / cols;
+        int col = cell % cols;
+        if (pendingHide || revealedCell >= 0 || cell < 0 || !gameBoard.canSelectCard(row, col)) {
+            return;
         }
+        gameBoard.revealCard(row, col);
+        revealedCell = cell;
+        sendBoardDelta(row, col, -1, -1);
     }
 
-    /** Handles messages from the player (card selection). */
-    private void handlePlayer(int playerNumber) {
-        ObjectInputStream input = (playerNumber == 1) ? player1Input : player2Input;
-        try {
-            while (gameActive) {
-                Object obj = input.readObject();
-                if (obj instanceof CardSelection) {
-                    CardSelection selection = (CardSelection) obj;
-                    if (selection.getPlayerNumber() == currentPlayer) {
-                        processCardSelection(selection);
-                    }
+    /** Sends a fresh board snapshot to one player who lost track of the delta stream. */
+    private synchronized void sendSnapshot(int playerNumber) {
+        sendTo(playerNumber, createSnapshotMessage());
+    }
+
+    /** Creates a snapshot of the board at the current sequence number. */
+    private GameMessage createSnapshotMessage() {
+        return new GameMessage(GameMessage.MessageType.BOARD_SNAPSHOT,
+                BoardSnapshot.of(gameBoard, boardSequence, !context.isHiddenBoard()));
+    }
+
+    /**
+     * Sends the new state of the given cells to all players as the next delta. Cells outside the board are skipped.
+     * With a hidden board the delta also carries the values of the cards that are face up.
+     */
+    private void sendBoardDelta(int row1, int col1, int row2, int col2) {
+        int cols = gameBoard.getCols();
+        int[][] positions = {{row1, col1}, {row2, col2}};
+        int count = 0;
+        int[] cells = new int[2];
+        byte[] states = new byte[2];
+        for (int[] position : positions) {
+            if (gameBoard.getCardValue(position[0], position[1]) < 0) continue;
+            int cell = position[0] * cols + position[1];
+            if (count == 1 && cells[0] == cell) continue;
+            cells[count] = cell;
+            states[count] = BoardSnapshot.stateOf(gameBoard, position[0], position[1]);
+            count++;
+        }
+        if (count == 0) return;
+        if (count < cells.length) {
+            cells = Arrays.copyOf(cells, count);
+            states = Arrays.copyOf(states, count);
+        }
+        int[] values = null;
+        if (context.isHiddenBoard()) {
+            values = new int[count];
+            for (int i = 0; i < count; i++) {
+                if (states[i] != BoardSnapshot.HIDDEN) {
+                    values[i] = gameBoard.getCardValue(cells[i] / cols, cells[i] % cols);
                 }
             }
-        } catch (Exception e) {
-            if (gameActive) {
-                e.printStackTrace();
+        }
+        broadcast(new GameMessage(GameMessage.MessageType.BOARD_DELTA,
+                new BoardDelta(++boardSequence, cells, states, values)));
+    }
+
+    /**
+     * Called when a player's connection dropped. During the game the seat is kept for the resume grace period
+     * and the other players are told to wait; after the game, or without a grace period, the session is closed.
+     */
+    public void onPlayerDisconnected(int playerNumber, PlayerConnection connection) {
+        boolean waiting = false;
+        synchronized (this) {
+            if (connectionOf(playerNumber) != connection) {
+                // An old connection that was already replaced by a resume
+                return;
+            }
+            setConnection(playerNumber, null);
+            if (gameActive && context.getResumeGraceMillis() > 0) {
+                System.out.println("שחקן " + playerNumber + " התנתק, ממתין לחזרתו...");
+                GameMessage leftMsg = new GameMessage(GameMessage.MessageType.PLAYER_LEFT);
+                leftMsg.setPlayerNumber(playerNumber);
+                broadcastExcept(playerNumber, leftMsg);
+                graceTimers[playerNumber - 1] = context.schedule(() -> onResumeExpired(playerNumber),
+                        context.getResumeGraceMillis());
+                waiting = true;
+            } else if (gameActive) {
+                System.out.println("שחקן " + playerNumber + " התנתק, המשחק הופסק");
+                gameActive = false;
+            }
+        }
+        connection.close();
+        if (!waiting) {
+            closeConnections();
+        }
+    }
+
+    /**
+     * Gives a player that reconnected its seat back: sends it the start message, a board snapshot and
+     * whose turn it is, and tells the other players. Returns false if the game is already over.
+     */
+    public boolean resume(int playerNumber, PlayerConnection connection) {
+        PlayerConnection previous;
+        synchronized (this) {
+            if (!gameActive || closed.get()) {
+                return false;
+            }
+            previous = connectionOf(playerNumber);
+            setConnection(playerNumber, connection);
+            ScheduledFuture<?> timer = graceTimers[playerNumber - 1];
+            if (timer != null) {
+                timer.cancel(false);
+                graceTimers[playerNumber - 1] = null;
+            }
+            System.out.println("שחקן " + playerNumber + " חזר למשחק");
+            sendTo(playerNumber, createStartMessage(playerNumber));
+            sendTo(playerNumber, createSnapshotMessage());
+            GameMessage turnMsg = new GameMessage(GameMessage.MessageType.PLAYER_TURN);
+            turnMsg.setPlayerNumber(currentPlayer);
+            sendTo(playerNumber, turnMsg);
+            GameMessage resumedMsg = new GameMessage(GameMessage.MessageType.PLAYER_RESUMED);
+            resumedMsg.setPlayerNumber(playerNumber);
+            broadcastExcept(playerNumber, resumedMsg);
+        }
+        if (previous != null) {
+            // The client noticed the drop before the server did
+            previous.close();
+        }
+        if (!eventDriven) {
+            startReader(playerNumber, connection);
+        }
+        return true;
+    }
+
+    /** Ends the game when a disconnected player did not come back within the grace period. */
+    private void onResumeExpired(int playerNumber) {
+        synchronized (this) {
+            if (!gameActive || connectionOf(playerNumber) != null || closed.get()) {
+                return;
             }
+            System.out.println("שחקן " + playerNumber + " לא חזר, המשחק הופסק");
+            gameActive = false;
+            context.getMetrics().resumeExpired();
+            broadcast(new GameMessage(GameMessage.MessageType.GAME_END, "שחקן " + playerNumber + " התנתק, המשחק הסתיים"));
         }
+        closeConnections();
     }
 
     /** Handles a player's turn, updates board and scores, and sends results. */
     private synchronized void processCardSelection(CardSelection selection) {
+        long start = System.nanoTime();
+        if (pendingHide) {
+            // The previous mismatch is still on display
+            return;
+        }
         try {
             int row1 = selection.getRow1();
             int col1 = selection.getCol1();
             int row2 = selection.getRow2();
             int col2 = selection.getCol2();
 
+            // The first card may already be face up from a CARD_REVEAL; otherwise both must be face down
+            boolean firstRevealed = revealedCell >= 0;
+            if (firstRevealed && revealedCell != row1 * gameBoard.getCols() + col1) {
+                return;
+            }
+            if ((!firstRevealed && !gameBoard.canSelectCard(row1, col1))
+                    || !gameBoard.canSelectCard(row2, col2)) {
+                return;
+            }
+            revealedCell = -1;
+
             gameBoard.revealCard(row1, col1);
             gameBoard.revealCard(row2, col2);
 
             boolean isMatch = gameBoard.isMatch(row1, col1, row2, col2);
-            TurnResult result = new TurnResult(selection, isMatch, player1Score, player2Score, currentPlayer, gameBoard.isGameFinished());
-
             if (isMatch) {
                 gameBoard.markAsMatched(row1, col1);
                 gameBoard.markAsMatched(row2, col2);
-                if (currentPlayer == 1) {
-                    player1Score++;
-                } else {
-                    player2Score++;
-                }
-                result.setPlayer1Score(player1Score);
-                result.setPlayer2Score(player2Score);
-                result.setNextPlayer(currentPlayer);
+                scores[currentPlayer - 1]++;
             } else {
-                currentPlayer = (currentPlayer == 1) ? 2 : 1;
-                result.setNextPlayer(currentPlayer);
+                currentPlayer = currentPlayer % players.length + 1;
             }
 
-            result.setGameFinished(gameBoard.isGameFinished());
+            boolean finished = gameBoard.isGameFinished();
+            TurnResult result = new TurnResult(selection, isMatch, scores.clone(), currentPlayer, finished);
+            result.setValues(gameBoard.getCardValue(row1, col1), gameBoard.getCardValue(row2, col2));
+            if (journal != null) journal.turn(result);
 
-            GameMessage resultMsg = new GameMessage(GameMessage.MessageType.TURN_RESULT, result);
-            player1Output.writeObject(resultMsg);
-            player1Output.flush();
-            player2Output.writeObject(resultMsg);
-            player2Output.flush();
+            sendBoardDelta(row1, col1, row2, col2);
+            broadcast(new GameMessage(GameMessage.MessageType.TURN_RESULT, result));
 
-            if (gameBoard.isGameFinished()) {
+            if (finished) {
                 gameActive = false;
+                unregisterTokens();
                 sendGameEndMessage();
             } else if (!isMatch) {
-                Thread.sleep(2000);
-                gameBoard.hideCard(row1, col1);
-                gameBoard.hideCard(row2, col2);
-                sendPlayerTurnMessage();
+                pendingHide = true;
+                context.schedule(() -> hideMismatchedCards(row1, col1, row2, col2), context.getRevealDelayMillis());
             } else {
                 sendPlayerTurnMessage();
             }
+            context.getMetrics().turnCompleted((System.nanoTime() - start) / 1000);
 
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /** Hides the two mismatched cards once the reveal delay passed and passes the turn on. */
+    private synchronized void hideMismatchedCards(int row1, int col1, int row2, int col2) {
+        gameBoard.hideCard(row1, col1);
+        gameBoard.hideCard(row2, col2);
+        pendingHide = false;
+        if (gameActive) {
+            sendBoardDelta(row1, col1, row2, col2);
+            sendPlayerTurnMessage();
+        }
+    }
+
     /** Sends message to show whose turn it is. */
     private void sendPlayerTurnMessage() {
-        try {
-            GameMessage turnMsg = new GameMessage(GameMessage.MessageType.PLAYER_TURN);
-            turnMsg.setPlayerNumber(currentPlayer);
-            player1Output.writeObject(turnMsg);
-            player1Output.flush();
-            player2Output.writeObject(turnMsg);
-            player2Output.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        GameMessage turnMsg = new GameMessage(GameMessage.MessageType.PLAYER_TURN);
+        turnMsg.setPlayerNumber(currentPlayer);
+        broadcast(turnMsg);
     }
 
-    /** Sends the final game result to both players. */
+    /** Sends the final game result to all players. A shared top score is a draw. */
     private void sendGameEndMessage() {
+        int winner = winner();
+        String endMessage = winner > 0 ? "שחקן " + winner + " ניצח!" : "תיקו!";
+        broadcast(new GameMessage(GameMessage.MessageType.GAME_END, endMessage));
+    }
+
+    /** Returns the player with the top score, or 0 if the top score is shared. */
+    private int winner() {
+        int winner = 0;
+        int best = -1;
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] > best) {
+                best = scores[i];
+                winner = i + 1;
+            } else if (scores[i] == best) {
+                winner = 0;
+            }
+        }
+        return winner;
+    }
+
+    /** Sends a message to all connected players, encoding it once. */
+    private void broadcast(GameMessage message) {
+        broadcastExcept(0, message);
+    }
+
+    /** Sends a message to all connected players but one and to all spectators, encoding it once. */
+    private void broadcastExcept(int skippedPlayer, GameMessage message) {
+        OutboundMessage shared = new OutboundMessage(message, context.getBufferPool());
         try {
-            String endMessage;
-            if (player1Score > player2Score) {
-                endMessage = "שחקן 1 ניצח!";
-            } else if (player2Score > player1Score) {
-                endMessage = "שחקן 2 ניצח!";
-            } else {
-                endMessage = "תיקו!";
+            for (int playerNumber = 1; playerNumber <= players.length; playerNumber++) {
+                if (playerNumber == skippedPlayer) continue;
+                PlayerConnection connection = players[playerNumber - 1];
+                if (connection == null) continue;
+                try {
+                    connection.send(shared);
+                } catch (IOException e) {
+                    dropLater(playerNumber, connection);
+                }
             }
+            spectators.publish(shared);
+        } finally {
+            shared.release();
+        }
+    }
 
-            GameMessage endMsg = new GameMessage(GameMessage.MessageType.GAME_END, endMessage);
-            player1Output.writeObject(endMsg);
-            player1Output.flush();
-            player2Output.writeObject(endMsg);
-            player2Output.flush();
+    /**
+     * Sends a message to one player. Nothing is sent while the player is disconnected;
+     * a failed send is treated like a dropped connection.
+     */
+    private void sendTo(int playerNumber, GameMessage message) {
+        PlayerConnection connection = connectionOf(playerNumber);
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.send(message);
         } catch (IOException e) {
-            e.printStackTrace();
+            dropLater(playerNumber, connection);
         }
     }
 
-    /** Closes all sockets and streams of both players. */
-    private void closeConnections() {
-        try {
-            if (player1Input != null) player1Input.close();
-            if (player1Output != null) player1Output.close();
-            if (player1Socket != null) player1Socket.close();
+    /** Handles a failed send outside the current broadcast. */
+    private void dropLater(int playerNumber, PlayerConnection connection) {
+        context.execute(() -> onPlayerDisconnected(playerNumber, connection));
+    }
 
-            if (player2Input != null) player2Input.close();
-            if (player2Output != null) player2Output.close();
-            if (player2Socket != null) player2Socket.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    private PlayerConnection connectionOf(int playerNumber) {
+        return players[playerNumber - 1];
+    }
+
+    private void setConnection(int playerNumber, PlayerConnection connection) {
+        players[playerNumber - 1] = connection;
+    }
+
+    /** Makes the resume tokens of this session unusable. */
+    private void unregisterTokens() {
+        for (int i = 0; i < resumeTokens.length; i++) {
+            context.getSessionRegistry().remove(resumeTokens[i]);
+            ScheduledFuture<?> timer = graceTimers[i];
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+    }
+
+    /** Closes the connections of all players; spectators are closed once they received the end of the game. */
+    private void closeConnections() {
+        PlayerConnection[] connections;
+        synchronized (this) {
+            gameActive = false;
+            unregisterTokens();
+            connections = players.clone();
+            if (closed.compareAndSet(false, true)) {
+                context.getSessionRegistry().removeSession(this);
+                spectators.finish();
+                if (journal != null) {
+                    boolean finished = gameBoard.isGameFinished();
+                    journal.ended(scores, finished, finished ? winner() : 0);
+                }
+                context.sessionEnded();
+            }
+        }
+        for (PlayerConnection connection : connections) {
+            if (connection != null) connection.close();
         }
     }
 }
@@ -0,0 +1,40 @@
+import java.io.Serializable;
+
+/** Game settings the server sends to each player together with GAME_START. */
+public class GameStartInfo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long revealDelayMillis;
+    private String resumeToken;
+    private int[] scores;
+    private Long seed;
+
+    /** Creates the start info with the server's reveal delay. */
+    public GameStartInfo(long revealDelayMillis) {
+        this.revealDelayMillis = revealDelayMillis;
+    }
+
+    /** Returns how long mismatched cards stay visible, in milliseconds. */
+    public long getRevealDelayMillis() { return revealDelayMillis; }
+
+    /** Sets how long mismatched cards stay visible, in milliseconds. */
+    public void setRevealDelayMillis(long revealDelayMillis) { this.revealDelayMillis = revealDelayMillis; }
+
+    /** Returns the token that lets this player take its seat back after a dropped connection, or null. */
+    public String getResumeToken() { return resumeToken; }
+
+    /** Sets the token that lets this player take its seat back after a dropped connection. */
+    public void setResumeToken(String resumeToken) { this.resumeToken = resumeToken; }
+
+    /** Returns the scores so far, indexed by player number - 1, or null if the server did not send them. */
+    public int[] getScores() { return scores; }
+
+    /** Sets the scores so far, indexed by player number - 1. */
+    public void setScores(int[] scores) { this.scores = scores; }
+
+    /** Returns the seed the board was shuffled from, or null if the server keeps the board hidden. */
+    public Long getSeed() { return seed; }
+
+    /** Sets the seed the board was shuffled from. */
+    public void setSeed(Long seed) { this.seed = seed; }
+}
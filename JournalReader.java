@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Reads the games written by a {@link GameJournal}. Sealed segments are searched through their index;
+ * the segment the server is still writing is scanned up to its last complete record.
+ * The journal can be read while the server runs.
+ * <p>
+ * Usage: {@code java JournalReader <dir> [gameId]} lists the games in the journal, or prints the records of one game.
+ */
+public class JournalReader {
+    /** Bytes per index entry: a long game id and an int record number. */
+    static final int INDEX_ENTRY_SIZE = 12;
+
+    private final Path directory;
+
+    /** Creates a reader for a journal directory. */
+    public JournalReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /** Returns the ids of all games that have records in the journal, in ascending order. */
+    public List<Long> listGames() throws IOException {
+        TreeSet<Long> games = new TreeSet<>();
+        for (Path segment : GameJournal.listSegments(directory)) {
+            Path index = GameJournal.indexOf(segment);
+            if (Files.exists(index)) {
+                ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index));
+                for (int offset = 0; offset + INDEX_ENTRY_SIZE <= entries.limit(); offset += INDEX_ENTRY_SIZE) {
+                    games.add(entries.getLong(offset));
+                }
+            } else {
+                scan(segment, record -> games.add(record.getGameId()));
+            }
+        }
+        return new ArrayList<>(games);
+    }
+
+    /** Returns the records of one game in the order the session made them; empty if the journal does not have it. */
+    public List<JournalRecord> readGame(long gameId) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        for (Path segment : GameJournal.listSegments(directory)) {
+            Path index = GameJournal.indexOf(segment);
+            if (Files.exists(index)) {
+                readIndexed(segment, index, gameId, records);
+            } else {
+                scan(segment, record -> {
+                    if (record.getGameId() == gameId) records.add(record);
+                });
+            }
+        }
+        records.sort(Comparator.comparingInt(JournalRecord::getSequence));
+        return records;
+    }
+
+    /** Hands the records of one game to the consumer in the order the session made them. */
+    public void replay(long gameId, Consumer<JournalRecord> consumer) throws IOException {
+        for (JournalRecord record : readGame(gameId)) {
+            consumer.accept(record);
+        }
+    }
+
+    /** Adds the records of a game in a sealed segment, found by a binary search of the segment's index. */
+    private static void readIndexed(Path segment, Path index, long gameId, List<JournalRecord> records) throws IOException {
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index));
+        int low = 0;
+        int high = entries.limit() / INDEX_ENTRY_SIZE;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries.getLong(middle * INDEX_ENTRY_SIZE) < gameId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int count = entries.limit() / INDEX_ENTRY_SIZE;
+        if (low == count || entries.getLong(low * INDEX_ENTRY_SIZE) != gameId) {
+            return;
+        }
+        MappedByteBuffer buffer = map(segment);
+        for (int i = low; i < count && entries.getLong(i * INDEX_ENTRY_SIZE) == gameId; i++) {
+            JournalRecord record = JournalRecord.readFrom(buffer, entries.getInt(i * INDEX_ENTRY_SIZE + 8) * JournalRecord.SIZE);
+            if (record != null) records.add(record);
+        }
+    }
+
+    /** Reads a segment from the start up to its first empty or torn record. */
+    private static void scan(Path segment, Consumer<JournalRecord> consumer) throws IOException {
+        MappedByteBuffer buffer = map(segment);
+        JournalRecord record;
+        for (int offset = 0; offset + JournalRecord.SIZE <= buffer.limit(); offset += JournalRecord.SIZE) {
+            if ((record = JournalRecord.readFrom(buffer, offset)) == null) break;
+            consumer.accept(record);
+        }
+    }
+
+    private static MappedByteBuffer map(Path segment) throws IOException {
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("שימוש: java JournalReader <תיקייה> [מספר משחק]");
+            System.exit(1);
+        }
+        JournalReader reader = new JournalReader(Paths.get(args[0]));
+        if (args.length == 1) {
+            for (long gameId : reader.listGames()) {
+                List<JournalRecord> records = reader.readGame(gameId);
+                System.out.println("משחק " + gameId + ": " + records.size() + " רשומות"
+                        + (records.isEmpty() ? "" : ", " + records.get(records.size() - 1)));
+            }
+        } else {
+            reader.replay(Long.parseLong(args[1]), System.out::println);
+        }
+    }
+}
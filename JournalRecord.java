@@ -0,0 +1,234 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * One fixed-size record of the {@link GameJournal}. Every record is {@value #SIZE} bytes, so a record's
+ * place in a segment follows from its number and a segment can be read without any framing.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *  0 long  game id            8 long  time (epoch millis)
+ * 16 int   sequence in game  20 byte  kind
+ * 21 byte  player            22 byte  flags (1 = match, 2 = finished, high 4 bits: score count)
+ * 23 byte  next player       24 short row1, col1, row2, col2 (START: rows, cols)
+ * 32 short value1, value2    36 short scores[8]
+ * 52 long  extra (START: board seed)
+ * 60 int   CRC32 of bytes 0-59
+ * </pre>
+ * A record whose kind is {@link #EMPTY} or whose CRC does not match marks the end of the written part of a segment.
+ */
+public final class JournalRecord {
+    /** Size of every record in bytes. */
+    public static final int SIZE = 64;
+
+    /** Unused space after the last record of a segment. */
+    public static final byte EMPTY = 0;
+    /** A game started: rows, cols and the number of players. */
+    public static final byte START = 1;
+    /** A card selection arrived from a player, whether or not it was accepted. */
+    public static final byte SELECTION = 2;
+    /** The result of an accepted turn. */
+    public static final byte RESULT = 3;
+    /** The game ended: final scores, the finished flag if the board was cleared, winner or 0. */
+    public static final byte END = 4;
+
+    private static final int MAX_SCORES = 8;
+    private static final int CRC_OFFSET = 60;
+    private static final byte MATCH = 1;
+    private static final byte FINISHED = 2;
+    private static final int SCORE_COUNT_SHIFT = 4;
+
+    private long gameId;
+    private long timeMillis;
+    private int sequence;
+    private byte kind;
+    private int player;
+    private byte flags;
+    private int nextPlayer;
+    private int row1, col1, row2, col2;
+    private int value1, value2;
+    private int[] scores = new int[0];
+    private long extra;
+
+    /** Creates an empty record of the given kind. */
+    public JournalRecord(byte kind, long gameId, long timeMillis) {
+        this.kind = kind;
+        this.gameId = gameId;
+        this.timeMillis = timeMillis;
+    }
+
+    /** Creates the START record of a game. */
+    public static JournalRecord start(long gameId, long timeMillis, int rows, int cols, int players, long seed) {
+        JournalRecord record = new JournalRecord(START, gameId, timeMillis);
+        record.row1 = rows;
+        record.col1 = cols;
+        record.player = players;
+        record.extra = seed;
+        return record;
+    }
+
+    /** Creates the record of a card selection sent by a player. */
+    public static JournalRecord selection(long gameId, long timeMillis, int sender, CardSelection selection) {
+        JournalRecord record = new JournalRecord(SELECTION, gameId, timeMillis);
+        record.player = sender;
+        record.setCells(selection);
+        return record;
+    }
+
+    /** Creates the record of a turn result. */
+    public static JournalRecord result(long gameId, long timeMillis, TurnResult result) {
+        JournalRecord record = new JournalRecord(RESULT, gameId, timeMillis);
+        record.player = result.getSelection().getPlayerNumber();
+        record.setCells(result.getSelection());
+        record.flags = (byte) ((result.isMatch() ? MATCH : 0) | (result.isGameFinished() ? FINISHED : 0));
+        record.nextPlayer = result.getNextPlayer();
+        record.value1 = result.getValue1();
+        record.value2 = result.getValue2();
+        record.scores = result.getScores().clone();
+        return record;
+    }
+
+    /** Creates the END record of a game. The winner is 0 for a draw or an abandoned game. */
+    public static JournalRecord end(long gameId, long timeMillis, int[] scores, boolean finished, int winner) {
+        JournalRecord record = new JournalRecord(END, gameId, timeMillis);
+        record.scores = scores.clone();
+        record.flags = finished ? FINISHED : 0;
+        record.player = winner;
+        return record;
+    }
+
+    private void setCells(CardSelection selection) {
+        row1 = selection.getRow1();
+        col1 = selection.getCol1();
+        row2 = selection.getRow2();
+        col2 = selection.getCol2();
+    }
+
+    /** Writes the record at the buffer's position, which moves on by {@value #SIZE}. The kind is written last. */
+    public void writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(start, gameId);
+        buffer.putLong(start + 8, timeMillis);
+        buffer.putInt(start + 16, sequence);
+        buffer.put(start + 21, (byte) player);
+        buffer.put(start + 22, (byte) (flags | Math.min(scores.length, MAX_SCORES) << SCORE_COUNT_SHIFT));
+        buffer.put(start + 23, (byte) nextPlayer);
+        buffer.putShort(start + 24, (short) row1);
+        buffer.putShort(start + 26, (short) col1);
+        buffer.putShort(start + 28, (short) row2);
+        buffer.putShort(start + 30, (short) col2);
+        buffer.putShort(start + 32, (short) value1);
+        buffer.putShort(start + 34, (short) value2);
+        for (int i = 0; i < MAX_SCORES; i++) {
+            buffer.putShort(start + 36 + i * 2, (short) (i < scores.length ? scores[i] : 0));
+        }
+        buffer.putLong(start + 52, extra);
+        buffer.put(start + 20, kind);
+        buffer.putInt(start + CRC_OFFSET, checksum(buffer, start));
+        buffer.position(start + SIZE);
+    }
+
+    /**
+     * Reads the record at the given offset. Returns null if there is no complete record there:
+     * the space is unused, or the record was torn by a crash.
+     */
+    public static JournalRecord readFrom(ByteBuffer buffer, int offset) {
+        byte kind = buffer.get(offset + 20);
+        if (kind == EMPTY || buffer.getInt(offset + CRC_OFFSET) != checksum(buffer, offset)) {
+            return null;
+        }
+        JournalRecord record = new JournalRecord(kind, buffer.getLong(offset), buffer.getLong(offset + 8));
+        record.sequence = buffer.getInt(offset + 16);
+        record.player = buffer.get(offset + 21);
+        byte flags = buffer.get(offset + 22);
+        record.flags = (byte) (flags & (MATCH | FINISHED));
+        record.nextPlayer = buffer.get(offset + 23);
+        record.row1 = buffer.getShort(offset + 24);
+        record.col1 = buffer.getShort(offset + 26);
+        record.row2 = buffer.getShort(offset + 28);
+        record.col2 = buffer.getShort(offset + 30);
+        record.value1 = buffer.getShort(offset + 32);
+        record.value2 = buffer.getShort(offset + 34);
+        int[] scores = new int[Math.min((flags & 0xF0) >>> SCORE_COUNT_SHIFT, MAX_SCORES)];
+        for (int i = 0; i < scores.length; i++) scores[i] = buffer.getShort(offset + 36 + i * 2);
+        record.scores = scores;
+        record.extra = buffer.getLong(offset + 52);
+        return record;
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < CRC_OFFSET; i++) {
+            crc.update(buffer.get(offset + i));
+        }
+        return (int) crc.getValue();
+    }
+
+    /** Returns the card selection of a SELECTION or RESULT record. */
+    public CardSelection toSelection() {
+        return new CardSelection(row1, col1, row2, col2, player);
+    }
+
+    /** Returns the turn result of a RESULT record. */
+    public TurnResult toTurnResult() {
+        TurnResult result = new TurnResult(toSelection(), isMatch(), scores.clone(), nextPlayer, isFinished());
+        result.setValues(value1, value2);
+        return result;
+    }
+
+    public long getGameId() { return gameId; }
+
+    public long getTimeMillis() { return timeMillis; }
+
+    public int getSequence() { return sequence; }
+
+    /** Sets the record's number within its game; assigned by the journal's writer. */
+    public void setSequence(int sequence) { this.sequence = sequence; }
+
+    public byte getKind() { return kind; }
+
+    /** Returns the sender of a selection, the mover of a result, the player count of a start or the winner of an end. */
+    public int getPlayer() { return player; }
+
+    public boolean isMatch() { return (flags & MATCH) != 0; }
+
+    public boolean isFinished() { return (flags & FINISHED) != 0; }
+
+    public int getNextPlayer() { return nextPlayer; }
+
+    /** Returns the board rows of a START record. */
+    public int getRows() { return row1; }
+
+    /** Returns the board columns of a START record. */
+    public int getCols() { return col1; }
+
+    public int[] getScores() { return scores.clone(); }
+
+    /** Returns the board seed of a START record. */
+    public long getSeed() { return extra; }
+
+    @Override
+    public String toString() {
+        String[] kinds = {"EMPTY", "START", "SELECTION", "RESULT", "END"};
+        String name = kind >= 0 && kind < kinds.length ? kinds[kind] : "KIND" + kind;
+        switch (kind) {
+            case START:
+                return "#" + sequence + " " + name + " game=" + gameId + " board=" + row1 + "x" + col1
+                        + " players=" + player + " seed=" + extra;
+            case SELECTION:
+                return "#" + sequence + " " + name + " player=" + player
+                        + " (" + row1 + "," + col1 + ")-(" + row2 + "," + col2 + ")";
+            case RESULT:
+                return "#" + sequence + " " + name + " player=" + player
+                        + " (" + row1 + "," + col1 + ")=" + value1 + " (" + row2 + "," + col2 + ")=" + value2
+                        + " match=" + isMatch() + " next=" + nextPlayer + " scores=" + Arrays.toString(scores)
+                        + (isFinished() ? " finished" : "");
+            case END:
+                return "#" + sequence + " " + name + " scores=" + Arrays.toString(scores)
+                        + " winner=" + player + (isFinished() ? " finished" : " abandoned");
+            default:
+                return "#" + sequence + " " + name;
+        }
+    }
+}
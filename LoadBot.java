@@ -0,0 +1,300 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A headless player used by {@link LoadGenerator}. It speaks the same protocol as the JavaFX client
+ * and plays games one after the other until the generator stops it.
+ * <p>
+ * The bot only uses what a player could see: the values of cards that were turned over.
+ * Each value it sees is remembered with the configured probability, so 0 plays randomly
+ * and 1 plays with perfect memory. On a hidden board it asks the server to reveal its first card.
+ */
+public class LoadBot implements Runnable {
+    private final String host;
+    private final int port;
+    private final MessageStream.Format format;
+    private final double memory;
+    private final long thinkMillis;
+    private final int rating;
+    private final LoadGenerator.Stats stats;
+
+    private volatile boolean running = true;
+    private volatile Socket socket;
+
+    // State of the current game
+    private MessageStream stream;
+    private int playerNumber;
+    private int rows, cols;
+    private int[] shownValues;      // values sent by the server with the board, null on a hidden board
+    private int[] remembered;       // values the bot remembers, 0 = unknown
+    private int[] cellsByValue;     // two remembered cells per value (index value * 2), -1 = none
+    private final ArrayDeque<int[]> knownPairs = new ArrayDeque<>();
+    private boolean[] matched;
+    private int unmatchedCards;
+    private int pendingReveal = -1; // cell the bot asked the server to reveal
+    private long turnSentAt;        // System.nanoTime() when the last selection was sent, 0 if none is pending
+
+    /** Creates a bot that remembers each card it sees with the given probability (0-1) and announces the given rating. */
+    public LoadBot(String host, int port, MessageStream.Format format, double memory, long thinkMillis,
+                   int rating, LoadGenerator.Stats stats) {
+        this.host = host;
+        this.port = port;
+        this.format = format;
+        this.memory = memory;
+        this.thinkMillis = thinkMillis;
+        this.rating = rating;
+        this.stats = stats;
+    }
+
+    /** Plays games until stopped. Connection errors are counted and the bot tries again. */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                playOneGame();
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                if (running) {
+                    stats.connectionFailed();
+                    pause(200);
+                }
+            }
+        }
+    }
+
+    /** Tells the bot to stop after the current message, so a closing opponent is not counted as a failure. */
+    public void halt() {
+        running = false;
+    }
+
+    /** Stops the bot and closes its connection; a game in progress is abandoned. */
+    public void stop() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void playOneGame() throws IOException, ClassNotFoundException {
+        long connectStart = System.nanoTime();
+        try (Socket s = new Socket(host, port)) {
+            socket = s;
+            s.setTcpNoDelay(true);
+            stream = MessageStream.connect(s, format);
+            stats.connected((System.nanoTime() - connectStart) / 1000);
+            stream.write(new GameMessage(GameMessage.MessageType.JOIN_GAME, (Object) rating));
+            pendingReveal = -1;
+            turnSentAt = 0;
+
+            while (running) {
+                Object obj = stream.read();
+                if (!(obj instanceof GameMessage)) continue;
+                GameMessage message = (GameMessage) obj;
+                switch (message.getType()) {
+                    case PING:
+                        stream.write(new GameMessage(GameMessage.MessageType.PONG, message.getData()));
+                        break;
+                    case GAME_START:
+                        playerNumber = message.getPlayerNumber();
+                        break;
+                    case BOARD_SNAPSHOT:
+                        onSnapshot((BoardSnapshot) message.getData());
+                        break;
+                    case BOARD_DELTA:
+                        onDelta((BoardDelta) message.getData());
+                        break;
+                    case PLAYER_TURN:
+                        if (message.getPlayerNumber() == playerNumber) {
+                            playTurn();
+                        }
+                        break;
+                    case TURN_RESULT:
+                        onTurnResult((TurnResult) message.getData());
+                        break;
+                    case GAME_END:
+                        stats.gameFinished();
+                        return;
+                    default:
+                        break;
+                }
+            }
+        } catch (SocketException e) {
+            if (running) throw e;
+        } finally {
+            socket = null;
+        }
+    }
+
+    private void onSnapshot(BoardSnapshot snapshot) {
+        rows = snapshot.getRows();
+        cols = snapshot.getCols();
+        int cells = rows * cols;
+        shownValues = snapshot.getValues();
+        remembered = new int[cells];
+        cellsByValue = new int[(cells / 2 + 1) * 2];
+        Arrays.fill(cellsByValue, -1);
+        knownPairs.clear();
+        matched = new boolean[cells];
+        unmatchedCards = cells;
+        for (int cell = 0; cell < cells; cell++) {
+            if (snapshot.getStates()[cell] == BoardSnapshot.MATCHED) {
+                matched[cell] = true;
+                unmatchedCards--;
+            }
+        }
+        // A hidden board sends only the values of face-up cards
+        if (shownValues != null && snapshot.getStates().length > 0) {
+            boolean anyHidden = false;
+            for (int cell = 0; cell < cells && !anyHidden; cell++) {
+                anyHidden = shownValues[cell] == 0;
+            }
+            if (anyHidden) shownValues = null;
+        }
+    }
+
+    private void onDelta(BoardDelta delta) throws IOException {
+        int[] values = delta.getValues();
+        for (int i = 0; i < delta.getCells().length; i++) {
+            int cell = delta.getCells()[i];
+            if (values != null && values[i] > 0) {
+                see(cell, values[i]);
+            }
+            if (delta.getStates()[i] == BoardSnapshot.MATCHED && !matched[cell]) {
+                matched[cell] = true;
+                unmatchedCards--;
+            }
+        }
+        if (pendingReveal >= 0 && values != null) {
+            for (int i = 0; i < delta.getCells().length; i++) {
+                if (delta.getCells()[i] == pendingReveal && values[i] > 0) {
+                    int first = pendingReveal;
+                    pendingReveal = -1;
+                    selectSecond(first, values[i]);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void onTurnResult(TurnResult result) {
+        if (result.getSelection().getPlayerNumber() == playerNumber && turnSentAt != 0) {
+            stats.turnCompleted((System.nanoTime() - turnSentAt) / 1000);
+            turnSentAt = 0;
+        }
+        CardSelection selection = result.getSelection();
+        int cell1 = selection.getRow1() * cols + selection.getCol1();
+        int cell2 = selection.getRow2() * cols + selection.getCol2();
+        if (result.getValue1() > 0) {
+            see(cell1, result.getValue1());
+            see(cell2, result.getValue2());
+        }
+        if (result.isMatch()) {
+            for (int cell : new int[] {cell1, cell2}) {
+                if (!matched[cell]) {
+                    matched[cell] = true;
+                    unmatchedCards--;
+                }
+            }
+        }
+    }
+
+    /** Picks the first card of a turn: a remembered pair if there is one, otherwise a card it has not seen. */
+    private void playTurn() throws IOException {
+        if (unmatchedCards <= 0 || remembered == null) return;
+        pause(thinkMillis);
+
+        int[] known = findRememberedPair();
+        if (known != null) {
+            sendSelection(known[0], known[1]);
+            return;
+        }
+        int first = randomCell(-1);
+        if (shownValues == null) {
+            pendingReveal = first;
+            GameMessage request = new GameMessage(GameMessage.MessageType.CARD_REVEAL, (Object) first);
+            request.setPlayerNumber(playerNumber);
+            stream.write(request);
+        } else {
+            see(first, shownValues[first]);
+            selectSecond(first, shownValues[first]);
+        }
+    }
+
+    /** Picks the partner of the first card if the bot remembers it, otherwise another card it has not seen. */
+    private void selectSecond(int first, int value) throws IOException {
+        int second = -1;
+        for (int slot = value * 2; slot < value * 2 + 2 && slot < cellsByValue.length; slot++) {
+            int cell = cellsByValue[slot];
+            if (cell >= 0 && cell != first && !matched[cell]) {
+                second = cell;
+            }
+        }
+        if (second < 0) {
+            second = randomCell(first);
+        }
+        sendSelection(first, second);
+    }
+
+    private void sendSelection(int cell1, int cell2) throws IOException {
+        turnSentAt = System.nanoTime();
+        stream.write(new CardSelection(cell1 / cols, cell1 % cols, cell2 / cols, cell2 % cols, playerNumber));
+    }
+
+    /** Remembers a card value with the configured probability. */
+    private void see(int cell, int value) {
+        if (remembered[cell] != 0 || value * 2 + 1 >= cellsByValue.length
+                || ThreadLocalRandom.current().nextDouble() >= memory) {
+            return;
+        }
+        remembered[cell] = value;
+        int slot = value * 2;
+        if (cellsByValue[slot] < 0) {
+            cellsByValue[slot] = cell;
+        } else if (cellsByValue[slot + 1] < 0) {
+            cellsByValue[slot + 1] = cell;
+            knownPairs.add(new int[] {cellsByValue[slot], cell});
+        }
+    }
+
+    /** Returns a remembered pair that is still on the board, or null. */
+    private int[] findRememberedPair() {
+        int[] pair;
+        while ((pair = knownPairs.poll()) != null) {
+            if (!matched[pair[0]] && !matched[pair[1]]) {
+                return pair;
+            }
+        }
+        return null;
+    }
+
+    /** Returns a random unmatched cell other than exclude, preferring cells the bot does not remember. */
+    private int randomCell(int exclude) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int cells = remembered.length;
+        int start = random.nextInt(cells);
+        int fallback = -1;
+        for (int i = 0; i < cells; i++) {
+            int cell = (start + i) % cells;
+            if (cell == exclude || matched[cell]) continue;
+            if (remembered[cell] == 0) return cell;
+            if (fallback < 0) fallback = cell;
+        }
+        return fallback;
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
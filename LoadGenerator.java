@@ -0,0 +1,172 @@
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless load generator: runs many {@link LoadBot} players against a MemoryGameServer from one JVM
+ * and reports turn latency percentiles, games per second and connection failures.
+ * Optional {@link LoadSpectator}s watch the games at the same time.
+ * <p>
+ * Bots run on virtual threads when the JVM has them, so thousands of connections need no thread tuning.
+ * Usage: java LoadGenerator [host] [port] [--clients=N] [--duration=SECONDS] [--memory=0..1]
+ *        [--think=MS] [--protocol=binary|java] [--report=SECONDS] [--ratings=MIN-MAX]
+ *        [--spectators=N] [--spectator-delay=MS]
+ */
+public class LoadGenerator {
+
+    /** Counters shared by all bots. Latencies are in microseconds. */
+    public static class Stats {
+        private final LatencyHistogram turnLatency = new LatencyHistogram();
+        private final LatencyHistogram connectLatency = new LatencyHistogram();
+        private final AtomicLong games = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong spectatorMessages = new AtomicLong();
+        private final AtomicLong spectatorSnapshots = new AtomicLong();
+        private final AtomicLong spectatorsDropped = new AtomicLong();
+
+        /** Called when a bot connected and finished the handshake. */
+        public void connected(long micros) {
+            connectLatency.record(micros);
+        }
+
+        /** Called when a connection could not be opened or broke during a game. */
+        public void connectionFailed() {
+            failures.incrementAndGet();
+        }
+
+        /** Called with the time from sending a card selection to receiving its TURN_RESULT. */
+        public void turnCompleted(long micros) {
+            turnLatency.record(micros);
+        }
+
+        /** Called by each player at the end of a game. */
+        public void gameFinished() {
+            games.incrementAndGet();
+        }
+
+        /** Called for every game message a spectator read. */
+        public void spectatorMessage() {
+            spectatorMessages.incrementAndGet();
+        }
+
+        /** Called when a spectator received a board snapshot: once per game, more if it was resynced. */
+        public void spectatorSnapshot() {
+            spectatorSnapshots.incrementAndGet();
+        }
+
+        /** Called when the server closed a spectator before its game ended. */
+        public void spectatorDropped() {
+            spectatorsDropped.incrementAndGet();
+        }
+
+        public LatencyHistogram getTurnLatency() { return turnLatency; }
+
+        public LatencyHistogram getConnectLatency() { return connectLatency; }
+
+        /** Returns the number of finished games (each game is reported by both of its players). */
+        public long getGames() { return games.get() / 2; }
+
+        public long getFailures() { return failures.get(); }
+
+        public long getSpectatorMessages() { return spectatorMessages.get(); }
+
+        public long getSpectatorSnapshots() { return spectatorSnapshots.get(); }
+
+        public long getSpectatorsDropped() { return spectatorsDropped.get(); }
+    }
+
+    /** Runs the load test. */
+    public static void main(String[] rawArgs) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        List<String> positional = new ArrayList<>();
+        for (String arg : rawArgs) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "" : arg.substring(eq + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+        String host = positional.size() >= 1 ? positional.get(0) : "localhost";
+        int port = positional.size() >= 2 ? Integer.parseInt(positional.get(1)) : 8080;
+        int clients = Integer.parseInt(options.getOrDefault("clients", "100"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        double memory = Double.parseDouble(options.getOrDefault("memory", "0.8"));
+        long thinkMillis = Long.parseLong(options.getOrDefault("think", "0"));
+        int reportSeconds = Integer.parseInt(options.getOrDefault("report", "5"));
+        String[] ratings = options.getOrDefault("ratings", "600-1400").split("-", 2);
+        int minRating = Integer.parseInt(ratings[0].trim());
+        int maxRating = ratings.length == 2 ? Integer.parseInt(ratings[1].trim()) : minRating;
+        int spectatorCount = Integer.parseInt(options.getOrDefault("spectators", "0"));
+        long spectatorDelayMillis = Long.parseLong(options.getOrDefault("spectator-delay", "0"));
+        MessageStream.Format format = MessageStream.Format.valueOf(options.getOrDefault("protocol", "binary").toUpperCase());
+
+        ThreadFactory botThreads = ServerThreads.virtualThreadsAvailable()
+                ? ServerThreads.virtual("load-bot") : ServerThreads.platform("load-bot");
+        System.out.println("מחולל עומס: " + clients + " שחקנים מול " + host + ":" + port
+                + " למשך " + durationSeconds + " שניות (" + format.name().toLowerCase()
+                + ", זיכרון " + memory + ", " + (ServerThreads.virtualThreadsAvailable() ? "תהליכונים וירטואליים" : "תהליכוני מערכת") + ")");
+
+        Stats stats = new Stats();
+        List<LoadBot> bots = new ArrayList<>();
+        ExecutorService executor = ServerThreads.threadPerTask(botThreads);
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            int rating = minRating + (maxRating > minRating ? ThreadLocalRandom.current().nextInt(maxRating - minRating + 1) : 0);
+            LoadBot bot = new LoadBot(host, port, format, memory, thinkMillis, rating, stats);
+            bots.add(bot);
+            executor.execute(bot);
+        }
+        List<LoadSpectator> spectators = new ArrayList<>();
+        for (int i = 0; i < spectatorCount; i++) {
+            LoadSpectator spectator = new LoadSpectator(host, port, format, spectatorDelayMillis, stats);
+            spectators.add(spectator);
+            executor.execute(spectator);
+        }
+
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long lastGames = 0;
+        long lastReport = start;
+        while (System.nanoTime() < end) {
+            long sleep = Math.min(TimeUnit.SECONDS.toMillis(Math.max(1, reportSeconds)),
+                    TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()));
+            Thread.sleep(Math.max(1, sleep));
+            long now = System.nanoTime();
+            long games = stats.getGames();
+            System.out.println(formatReport("[load]", stats, games - lastGames, now - lastReport));
+            lastGames = games;
+            lastReport = now;
+        }
+
+        for (LoadBot bot : bots) {
+            bot.halt();
+        }
+        for (LoadBot bot : bots) {
+            bot.stop();
+        }
+        for (LoadSpectator spectator : spectators) {
+            spectator.stop();
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        System.out.println(formatReport("[load-total]", stats, stats.getGames(), System.nanoTime() - start));
+        System.out.println("[load-total] connectMicros " + stats.getConnectLatency().formatPercentiles());
+        if (spectatorCount > 0) {
+            System.out.println("[load-total] spectators=" + spectatorCount + " messages=" + stats.getSpectatorMessages()
+                    + " snapshots=" + stats.getSpectatorSnapshots() + " dropped=" + stats.getSpectatorsDropped());
+        }
+    }
+
+    /** Returns one report line: games per second over the interval and turn latency so far, in microseconds. */
+    private static String formatReport(String prefix, Stats stats, long games, long intervalNanos) {
+        double seconds = intervalNanos / 1e9;
+        LatencyHistogram turns = stats.getTurnLatency();
+        return String.format("%s games=%d gamesPerSec=%.1f turns=%d failures=%d turnMicros %s",
+                prefix, stats.getGames(), seconds > 0 ? games / seconds : 0.0,
+                turns.getCount(), stats.getFailures(), turns.formatPercentiles());
+    }
+}
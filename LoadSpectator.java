@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * A headless spectator used by {@link LoadGenerator}. It watches the newest running game until it ends,
+ * then watches the next one, and counts what it receives. A read delay makes it a slow spectator,
+ * which the server should resync or drop without slowing the players down.
+ */
+public class LoadSpectator implements Runnable {
+    private final String host;
+    private final int port;
+    private final MessageStream.Format format;
+    private final long readDelayMillis;
+    private final LoadGenerator.Stats stats;
+
+    private volatile boolean running = true;
+    private volatile Socket socket;
+
+    /** Creates a spectator that waits readDelayMillis after every message it reads. */
+    public LoadSpectator(String host, int port, MessageStream.Format format, long readDelayMillis, LoadGenerator.Stats stats) {
+        this.host = host;
+        this.port = port;
+        this.format = format;
+        this.readDelayMillis = readDelayMillis;
+        this.stats = stats;
+    }
+
+    /** Watches games until stopped. A connection the server closed early is counted as a dropped spectator. */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (!watchOneGame()) {
+                    // No game to watch yet
+                    pause(200);
+                }
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                if (running) {
+                    stats.spectatorDropped();
+                    pause(200);
+                }
+            }
+        }
+    }
+
+    /** Stops the spectator and closes its connection. */
+    public void stop() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /** Watches one game to its end. Returns false if the server had no game to watch. */
+    private boolean watchOneGame() throws IOException, ClassNotFoundException {
+        try (Socket s = new Socket(host, port)) {
+            socket = s;
+            s.setTcpNoDelay(true);
+            MessageStream stream = MessageStream.connect(s, format);
+            stream.write(new GameMessage(GameMessage.MessageType.SPECTATE));
+            boolean watching = false;
+            while (running) {
+                Object obj = stream.read();
+                if (!(obj instanceof GameMessage)) continue;
+                GameMessage message = (GameMessage) obj;
+                switch (message.getType()) {
+                    case PING:
+                        stream.write(new GameMessage(GameMessage.MessageType.PONG, message.getData()));
+                        continue;
+                    case GAME_START:
+                        watching = true;
+                        break;
+                    case BOARD_SNAPSHOT:
+                        stats.spectatorSnapshot();
+                        break;
+                    case GAME_END:
+                        return watching;
+                    default:
+                        break;
+                }
+                stats.spectatorMessage();
+                pause(readDelayMillis);
+            }
+            return true;
+        } catch (SocketException e) {
+            if (running) throw e;
+            return true;
+        } finally {
+            socket = null;
+        }
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Groups waiting players by rating and round-trip time instead of arrival order.
+ * <p>
+ * Players are placed in buckets of {@value #RATING_BUCKET_WIDTH} rating points and a few RTT bands.
+ * A bucket that fills up to the group size starts a game at once, so a bucket never holds more than
+ * groupSize - 1 waiting players and the whole waiting set is bounded by the number of buckets, no matter
+ * how many players arrive. The longer a player waits, the more neighbouring buckets it accepts; after
+ * {@link #MAX_WAIT_MILLIS} any opponents will do. All decisions are made on one thread, so the buckets need no locks.
+ * <p>
+ * Before a group is handed on, every player in it is pinged on the probe executor, so the matching thread never
+ * waits on the network. A player that closed or does not answer in time is evicted and the others go
+ * back into the queue with their original waiting time. Players that wait long without a group are
+ * pinged every {@value #IDLE_CHECK_MILLIS} ms as well, so a dead connection does not sit in a bucket.
+ * A player that did not answer the PING on arrival (queued with {@link #UNKNOWN_RTT}) is never pinged
+ * again; instead the same checks wait up to {@value #CLOSE_CHECK_MILLIS} ms for it to close the connection.
+ */
+public class Matchmaker<T extends PlayerConnection> implements Runnable {
+    /** Rating used for players that did not announce one. */
+    public static final int DEFAULT_RATING = 1000;
+    /** How long a new player has to answer the PING before it is queued without an RTT. */
+    public static final long PING_TIMEOUT_MILLIS = 2000;
+    /** RTT of a player that did not answer the PING. */
+    public static final long UNKNOWN_RTT = -1;
+    /** How long a matched player with a known RTT has to answer the liveness PING before it is evicted. */
+    public static final long LIVENESS_TIMEOUT_MILLIS = 1000;
+
+    /** How long the check of a player without an RTT waits for its connection to report a close. */
+    public static final long CLOSE_CHECK_MILLIS = 200;
+
+    static final int RATING_BUCKET_WIDTH = 100;
+    private static final int MAX_RATING = 4000;
+    private static final long[] RTT_BANDS_MICROS = {20_000, 50_000, 100_000, 200_000, 500_000};
+    private static final long WIDEN_EVERY_MILLIS = 2000;
+    private static final long MAX_WAIT_MILLIS = 10_000;
+    private static final long SWEEP_MILLIS = 50;
+    private static final long IDLE_CHECK_MILLIS = 5000;
+
+    private static final int RATING_BUCKETS = MAX_RATING / RATING_BUCKET_WIDTH;
+    private static final int RTT_BUCKETS = RTT_BANDS_MICROS.length + 1;
+
+    /** One waiting player. */
+    private static final class Entry<T> {
+        final T player;
+        final int ratingBucket;
+        final int rttBucket;
+        final boolean answersPing;             // false if queued with UNKNOWN_RTT
+        final long enqueuedNanos = System.nanoTime();
+        long checkedNanos = enqueuedNanos;     // last liveness check, written by the matching thread
+
+        Entry(T player, int ratingBucket, int rttBucket, boolean answersPing) {
+            this.player = player;
+            this.ratingBucket = ratingBucket;
+            this.rttBucket = rttBucket;
+            this.answersPing = answersPing;
+        }
+    }
+
+    private final int groupSize;
+    private final Consumer<List<T>> onMatch;
+    private final Executor probeExecutor;
+    private final ServerMetrics metrics;
+    private final BlockingQueue<Entry<T>> arrivals = new LinkedBlockingQueue<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private volatile boolean running = true;
+
+    // Owned by the matching thread: fewer than groupSize waiting entries per bucket
+    private final List<List<Entry<T>>> slots;
+
+    /**
+     * Creates a matchmaker that hands every group of groupSize players who all answered the liveness PING
+     * to onMatch, in the order they started waiting. Liveness checks and onMatch run on the probe executor;
+     * a blocking check holds one of its threads for up to {@link #LIVENESS_TIMEOUT_MILLIS} per player.
+     */
+    public Matchmaker(int groupSize, Consumer<List<T>> onMatch, Executor probeExecutor, ServerMetrics metrics) {
+        this.groupSize = groupSize;
+        this.onMatch = onMatch;
+        this.probeExecutor = probeExecutor;
+        this.metrics = metrics;
+        this.slots = new ArrayList<>(RATING_BUCKETS * RTT_BUCKETS);
+        for (int bucket = 0; bucket < RATING_BUCKETS * RTT_BUCKETS; bucket++) {
+            slots.add(new ArrayList<>(groupSize - 1));
+        }
+    }
+
+    /** Starts the matching thread. */
+    public void start(ThreadFactory threads) {
+        threads.newThread(this).start();
+    }
+
+    /** Stops the matching thread. Waiting players are left as they are. */
+    public void stop() {
+        running = false;
+    }
+
+    /** Queues a player. Can be called from any thread. rttMicros is {@link #UNKNOWN_RTT} if it was not measured. */
+    public void enqueue(T player, int rating, long rttMicros) {
+        if (rttMicros >= 0) {
+            metrics.rttMeasured(rttMicros);
+        }
+        waiting.incrementAndGet();
+        arrivals.offer(new Entry<>(player, ratingBucketOf(rating), rttBucketOf(rttMicros), rttMicros >= 0));
+    }
+
+    /** Returns the number of players waiting for a game, including groups that are being checked. */
+    public int size() {
+        return waiting.get();
+    }
+
+    /** Places new arrivals as they come and widens the search for players that are still waiting. */
+    @Override
+    public void run() {
+        long lastSweep = System.nanoTime();
+        while (running) {
+            try {
+                Entry<T> entry = arrivals.poll(SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+                while (entry != null) {
+                    place(entry, System.nanoTime());
+                    entry = arrivals.poll();
+                }
+                long now = System.nanoTime();
+                if (now - lastSweep >= TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS)) {
+                    sweep(now);
+                    lastSweep = now;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** Adds a new player to its bucket and starts a game if enough acceptable players are waiting. */
+    private void place(Entry<T> entry, long now) {
+        if (!entry.player.isOpen()) {
+            evict(entry, false);
+            return;
+        }
+        List<Entry<T>> bucket = slots.get(entry.ratingBucket * RTT_BUCKETS + entry.rttBucket);
+        evictClosed(bucket);
+        bucket.add(entry);
+        if (bucket.size() == groupSize) {
+            List<Entry<T>> group = new ArrayList<>(bucket);
+            bucket.clear();
+            match(group);
+            return;
+        }
+        tryMatch(entry, now);
+    }
+
+    /** Tries again to match every waiting player now that their windows may have grown. */
+    private void sweep(long now) {
+        for (List<Entry<T>> bucket : slots) {
+            if (bucket.isEmpty()) continue;
+            evictClosed(bucket);
+            // The oldest player of a bucket has the widest window
+            if (!bucket.isEmpty() && tryMatch(bucket.get(0), now)) continue;
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                Entry<T> entry = bucket.get(i);
+                if (now - entry.checkedNanos >= TimeUnit.MILLISECONDS.toNanos(IDLE_CHECK_MILLIS)) {
+                    // Out of the bucket while it is pinged, so it cannot be matched and pinged at the same time
+                    bucket.remove(i);
+                    entry.checkedNanos = now;
+                    probeExecutor.execute(() -> checkIdle(entry));
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks for groupSize - 1 acceptable players for the entry, closest first, and starts their game.
+     * Returns false if not enough players are in reach yet.
+     */
+    private boolean tryMatch(Entry<T> entry, long now) {
+        List<Entry<T>> candidates = new ArrayList<>();
+        List<Integer> distances = new ArrayList<>();
+        for (List<Entry<T>> bucket : slots) {
+            for (Entry<T> other : bucket) {
+                if (other == entry || !other.player.isOpen()) continue;
+                int distance = distance(entry, other, now);
+                if (distance < 0) continue;
+                // Insertion keeps candidates sorted by distance, then by waiting time
+                int at = candidates.size();
+                while (at > 0 && (distances.get(at - 1) > distance
+                        || (distances.get(at - 1) == distance && candidates.get(at - 1).enqueuedNanos > other.enqueuedNanos))) {
+                    at--;
+                }
+                if (at < groupSize - 1) {
+                    candidates.add(at, other);
+                    distances.add(at, distance);
+                    if (candidates.size() > groupSize - 1) {
+                        candidates.remove(groupSize - 1);
+                        distances.remove(groupSize - 1);
+                    }
+                }
+            }
+        }
+        if (candidates.size() < groupSize - 1) {
+            return false;
+        }
+        List<Entry<T>> group = new ArrayList<>(groupSize);
+        group.add(entry);
+        group.addAll(candidates);
+        for (Entry<T> member : group) {
+            slots.get(member.ratingBucket * RTT_BUCKETS + member.rttBucket).remove(member);
+        }
+        group.sort((a, b) -> Long.compare(a.enqueuedNanos, b.enqueuedNanos));
+        match(group);
+        return true;
+    }
+
+    /** Returns how far apart two players are in buckets, or -1 if they are not yet allowed to play each other. */
+    private static int distance(Entry<?> entry, Entry<?> other, long now) {
+        int ratingDistance = Math.abs(other.ratingBucket - entry.ratingBucket);
+        int rttDistance = Math.abs(other.rttBucket - entry.rttBucket);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(now - Math.min(entry.enqueuedNanos, other.enqueuedNanos));
+        if (waitedMillis < MAX_WAIT_MILLIS) {
+            long window = waitedMillis / WIDEN_EVERY_MILLIS;
+            if (ratingDistance > window || rttDistance > window) return -1;
+        }
+        return ratingDistance + rttDistance;
+    }
+
+    /** Hands a group to the probe executor, which checks every player before the game starts. */
+    private void match(List<Entry<T>> group) {
+        probeExecutor.execute(() -> verify(group));
+    }
+
+    /** Checks every player; starts the game if all are alive, otherwise evicts the dead ones and requeues the others. */
+    private void verify(List<Entry<T>> group) {
+        List<Entry<T>> alive = new ArrayList<>(group.size());
+        for (Entry<T> entry : group) {
+            if (isAlive(entry)) {
+                alive.add(entry);
+            } else {
+                evict(entry, true);
+            }
+        }
+        if (alive.size() < group.size()) {
+            arrivals.addAll(alive);
+            return;
+        }
+        long now = System.nanoTime();
+        waiting.addAndGet(-group.size());
+        List<T> players = new ArrayList<>(group.size());
+        for (Entry<T> entry : group) {
+            metrics.queueWaitRecorded(TimeUnit.NANOSECONDS.toMicros(now - entry.enqueuedNanos));
+            players.add(entry.player);
+        }
+        onMatch.accept(players);
+    }
+
+    /** Checks a player that has been waiting alone and puts it back in the queue if it is alive. */
+    private void checkIdle(Entry<T> entry) {
+        if (isAlive(entry)) {
+            arrivals.offer(entry);
+        } else {
+            evict(entry, true);
+        }
+    }
+
+    /**
+     * Pings a player that answered the PING on arrival. One that never answered it would always fail the
+     * ping, so for it the check only waits a short time for the connection to report that it closed.
+     */
+    private boolean isAlive(Entry<T> entry) {
+        return entry.answersPing ? entry.player.ping(LIVENESS_TIMEOUT_MILLIS) : entry.player.isConnected(CLOSE_CHECK_MILLIS);
+    }
+
+    /** Drops the players of a bucket whose connections closed while they waited. */
+    private void evictClosed(List<Entry<T>> bucket) {
+        for (int i = bucket.size() - 1; i >= 0; i--) {
+            if (!bucket.get(i).player.isOpen()) {
+                evict(bucket.remove(i), false);
+            }
+        }
+    }
+
+    /** Drops a player that closed while waiting or did not answer its liveness PING. */
+    private void evict(Entry<T> entry, boolean unresponsive) {
+        waiting.decrementAndGet();
+        metrics.playerEvicted(unresponsive);
+        entry.player.close();
+    }
+
+    private static int ratingBucketOf(int rating) {
+        return Math.max(0, Math.min(MAX_RATING - 1, rating)) / RATING_BUCKET_WIDTH;
+    }
+
+    private static int rttBucketOf(long rttMicros) {
+        if (rttMicros < 0) return RTT_BUCKETS - 1;
+        for (int band = 0; band < RTT_BANDS_MICROS.length; band++) {
+            if (rttMicros < RTT_BANDS_MICROS[band]) return band;
+        }
+        return RTT_BUCKETS - 1;
+    }
+}
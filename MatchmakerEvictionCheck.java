@@ -0,0 +1,66 @@
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Checks that the blocking server's matchmaker drops a player that left while it was queued without an RTT.
+ * A client that never answers PING joins, closes its socket and a second such client joins its bucket:
+ * the group must be rejected and the closed player evicted. A third client then completes a game with the second.
+ * <p>
+ * Usage: java MatchmakerEvictionCheck. Exits with 1 if the closed player is matched or the others are not.
+ */
+public class MatchmakerEvictionCheck {
+    private static final long WAIT_MILLIS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService probes = Executors.newCachedThreadPool(ServerThreads.platform("probe"));
+        ServerMetrics metrics = new ServerMetrics();
+        BlockingQueue<List<SocketPlayerConnection>> games = new LinkedBlockingQueue<>();
+        Matchmaker<SocketPlayerConnection> matchmaker = new Matchmaker<>(2, games::add, probes, metrics);
+        matchmaker.start(ServerThreads.platform("matchmaker"));
+        boolean passed;
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Socket leaving = new Socket("localhost", listener.getLocalPort());
+            SocketPlayerConnection left = join(listener, leaving, probes);
+            matchmaker.enqueue(left, Matchmaker.DEFAULT_RATING, Matchmaker.UNKNOWN_RTT);
+            leaving.close();
+
+            Socket waitingSocket = new Socket("localhost", listener.getLocalPort());
+            SocketPlayerConnection waiting = join(listener, waitingSocket, probes);
+            matchmaker.enqueue(waiting, Matchmaker.DEFAULT_RATING, Matchmaker.UNKNOWN_RTT);
+            List<SocketPlayerConnection> wrongGame = games.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            boolean evicted = wrongGame == null && metrics.getEvictedPlayers() == 1 && matchmaker.size() == 1;
+            System.out.println("שחקן שהתנתק בתור: " + (evicted ? "הוצא מהתור" : "שובץ למשחק"));
+
+            Socket lateSocket = new Socket("localhost", listener.getLocalPort());
+            SocketPlayerConnection late = join(listener, lateSocket, probes);
+            matchmaker.enqueue(late, Matchmaker.DEFAULT_RATING, Matchmaker.UNKNOWN_RTT);
+            List<SocketPlayerConnection> game = games.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            boolean matched = game != null && game.contains(waiting) && game.contains(late);
+            System.out.println("שני השחקנים שנשארו: " + (matched ? "שובצו למשחק" : "לא שובצו"));
+
+            passed = evicted && matched;
+            waiting.close();
+            late.close();
+            waitingSocket.close();
+            lateSocket.close();
+        } finally {
+            matchmaker.stop();
+            probes.shutdownNow();
+        }
+        if (!passed) {
+            System.out.println("נכשל");
+            System.exit(1);
+        }
+        System.out.println("עבר");
+    }
+
+    /** Opens a Java-format client on the socket and returns the server side of it, as admitPlayer would. */
+    private static SocketPlayerConnection join(ServerSocket listener, Socket client, ExecutorService executor) throws Exception {
+        Socket accepted = listener.accept();
+        Future<SocketPlayerConnection> connection = executor.submit(() -> new SocketPlayerConnection(accepted, new ServerMetrics()));
+        MessageStream.connect(client, MessageStream.Format.JAVA);
+        return connection.get();
+    }
+}
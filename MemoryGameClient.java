@@ -5,6 +5,9 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /** Main class that runs the memory game client using JavaFX. */
 public class MemoryGameClient extends Application {
 
@@ -16,20 +19,74 @@ public class MemoryGameClient extends Application {
             String host = "localhost";
             int port = 8080;
 
+            // Watch a game instead of playing: --spectate for the newest game, --spectate N for game N
+            boolean spectate = false;
+            Integer watchedGame = null;
+            List<String> positional = new ArrayList<>();
+            List<String> unnamed = getParameters().getUnnamed();
+            for (int i = 0; i < unnamed.size(); i++) {
+                if (!unnamed.get(i).equals("--spectate")) {
+                    positional.add(unnamed.get(i));
+                    continue;
+                }
+                spectate = true;
+                if (i + 1 < unnamed.size() && unnamed.get(i + 1).matches("\\d+")) {
+                    watchedGame = Integer.parseInt(unnamed.get(++i));
+                }
+            }
+            String spectateParameter = getParameters().getNamed().get("spectate");
+            if (spectateParameter != null) {
+                spectate = true;
+                try {
+                    watchedGame = Integer.parseInt(spectateParameter);
+                } catch (NumberFormatException e) {
+                    System.err.println("מספר משחק לא תקין, צופה במשחק החדש ביותר");
+                }
+            }
+
             // Get host from command-line argument if provided
-            if (getParameters().getRaw().size() >= 1) {
-                host = getParameters().getRaw().get(0);
+            if (positional.size() >= 1) {
+                host = positional.get(0);
             }
 
             // Get port from command-line argument if provided
-            if (getParameters().getRaw().size() >= 2) {
+            if (positional.size() >= 2) {
                 try {
-                    port = Integer.parseInt(getParameters().getRaw().get(1));
+                    port = Integer.parseInt(positional.get(1));
                 } catch (NumberFormatException e) {
                     System.err.println("פורט לא תקין, משתמש בברירת מחדל: " + port);
                 }
             }
 
+            // Wire format: --protocol=binary (default) or --protocol=java
+            MessageStream.Format format = MessageStream.Format.BINARY;
+            String protocol = getParameters().getNamed().get("protocol");
+            if (protocol != null) {
+                try {
+                    format = MessageStream.Format.valueOf(protocol.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.err.println("פרוטוקול לא תקין, משתמש בברירת מחדל: binary");
+                }
+            }
+
+            // Skill rating used by the server's matchmaking: --rating=N
+            int rating = Matchmaker.DEFAULT_RATING;
+            String ratingParameter = getParameters().getNamed().get("rating");
+            if (ratingParameter != null) {
+                try {
+                    rating = Integer.parseInt(ratingParameter);
+                } catch (NumberFormatException e) {
+                    System.err.println("דירוג לא תקין, משתמש בברירת מחדל: " + rating);
+                }
+            }
+
+            // Board drawing: --renderer=buttons (default) or --renderer=canvas for one canvas with a texture atlas
+            String renderer = getParameters().getNamed().getOrDefault("renderer", "buttons");
+            if (!renderer.equals("buttons") && !renderer.equals("canvas")) {
+                System.err.println("מצב ציור לא תקין, משתמש בברירת מחדל: buttons");
+                renderer = "buttons";
+            }
+
             System.out.println("מתחבר לשרת: " + host + ":" + port);
 
             // Load the game UI from FXML file
@@ -39,10 +96,14 @@ public class MemoryGameClient extends Application {
             // Get the controller and pass it host, port and stage
             GameController controller = loader.getController();
             controller.setConnectionParameters(host, port);
+            controller.setWireFormat(format);
+            controller.setRating(rating);
+            controller.setCanvasRenderer(renderer.equals("canvas"));
+            if (spectate) controller.setSpectator(watchedGame);
             controller.setPrimaryStage(primaryStage);
 
             // Set up the main game window
-            primaryStage.setTitle("Memory Game - " + host + ":" + port);
+            primaryStage.setTitle("Memory Game - " + host + ":" + port + (spectate ? " (צפייה)" : ""));
             primaryStage.setScene(new Scene(root));
             primaryStage.setResizable(false);
             primaryStage.show();
@@ -1,84 +1,328 @@
 
 import java.io.*;
 import java.net.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
 import java.util.concurrent.*;
-import java.util.Scanner;
 
 /**
  * MemoryGameServer manages multiple concurrent memory game sessions.
  * It listens for client connections, pairs players, and starts games.
  */
 public class MemoryGameServer {
+
+    /** How the server handles player connections. */
+    public enum Mode {
+        BLOCKING,   // A thread per player, blocking object streams
+        VIRTUAL,    // Same blocking code, but sessions and readers run on virtual threads
+        NIO         // A few selector threads multiplexing all players
+    }
+
     private ServerSocket serverSocket;
     private int port;
     private int boardRows;
     private int boardCols;
     private ExecutorService threadPool;
-    private BlockingQueue<Socket> waitingClients;
+    private Matchmaker<PlayerConnection> matchmaker;
+    private Mode mode = Mode.BLOCKING;
+    private int ioThreads = 2;
+    private int reportSeconds = 0;
+    private long revealDelayMillis = 2000;
+    private boolean hiddenBoard;
+    private int metricsPort = 0;
+    private long resumeGraceMillis = 30_000;
+    private int playersPerGame = GameSession.MIN_PLAYERS;
+    private Path journalDirectory;
+    private long journalRetentionMillis = TimeUnit.DAYS.toMillis(7);
+    private GameJournal journal;
+    private ServerContext context;
+    private NioServerCore nioCore;
+    private MetricsEndpoint metricsEndpoint;
 
-    // Maximum number of images available
-    private static final int MAX_IMAGES = 40;
-    private static final int MAX_BOARD_SIZE = 6; // Maximum allowed board size is 6x6
+    // Maximum allowed board size is 100x100 (5000 pairs); clients draw generated faces past their images
+    private static final int MAX_BOARD_SIZE = 100;
 
     /** Constructor initializes port, board size, and thread pool. */
     public MemoryGameServer(int port, int boardRows, int boardCols) {
         this.port = port;
         this.boardRows = boardRows;
         this.boardCols = boardCols;
-        this.threadPool = Executors.newCachedThreadPool();
-        this.waitingClients = new LinkedBlockingQueue<>();
+    }
+
+    /** Selects the connection handling mode. The number of I/O threads is only used in NIO mode. */
+    public void setMode(Mode mode, int ioThreads) {
+        this.mode = mode;
+        this.ioThreads = ioThreads;
+    }
+
+    /** Prints a thread/heap report every given number of seconds (0 turns it off). */
+    public void setReportInterval(int seconds) {
+        this.reportSeconds = seconds;
+    }
+
+    /** Sets how long mismatched cards stay visible before they are hidden again. */
+    public void setRevealDelayMillis(long revealDelayMillis) {
+        this.revealDelayMillis = revealDelayMillis;
+    }
+
+    /** Keeps card values on the server; clients learn a value only when its card is revealed. */
+    public void setHiddenBoard(boolean hiddenBoard) {
+        this.hiddenBoard = hiddenBoard;
+    }
+
+    /** Serves metrics on http://127.0.0.1:PORT/metrics (0 turns the endpoint off; JMX is always on). */
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    /** Sets how long a game waits for a disconnected player to reconnect (0 ends the game at once). */
+    public void setResumeGraceMillis(long resumeGraceMillis) {
+        this.resumeGraceMillis = resumeGraceMillis;
+    }
+
+    /** Sets how many players take part in each game. */
+    public void setPlayersPerGame(int playersPerGame) {
+        this.playersPerGame = playersPerGame;
+    }
+
+    /** Records every game in a journal in the given directory, keeping sealed segments for retentionMillis (null keeps no journal). */
+    public void setJournal(Path directory, long retentionMillis) {
+        this.journalDirectory = directory;
+        this.journalRetentionMillis = retentionMillis;
+    }
+
+    /** Creates the thread pool and shared services for the selected mode. */
+    private void createThreads() {
+        if (mode == Mode.VIRTUAL && !ServerThreads.virtualThreadsAvailable()) {
+            System.err.println("תהליכונים וירטואליים אינם זמינים ב-JVM הזה, משתמש במצב blocking");
+            mode = Mode.BLOCKING;
+        }
+        if (mode == Mode.VIRTUAL) {
+            threadPool = ServerThreads.threadPerTask(ServerThreads.virtual("session"));
+            context = new ServerContext(mode, ServerThreads.virtual("player-reader"));
+        } else {
+            threadPool = Executors.newCachedThreadPool();
+            context = new ServerContext(mode, Thread::new);
+        }
+        context.setRevealDelayMillis(revealDelayMillis);
+        context.setHiddenBoard(hiddenBoard);
+        context.setResumeGraceMillis(resumeGraceMillis);
+        context.setPlayersPerGame(playersPerGame);
+        if (journalDirectory != null) {
+            try {
+                journal = GameJournal.open(journalDirectory, journalRetentionMillis);
+                context.setJournal(journal);
+                System.out.println("יומן המשחקים נכתב לתיקייה " + journalDirectory.toAbsolutePath());
+            } catch (IOException e) {
+                System.err.println("שגיאה בפתיחת יומן המשחקים, השרת ימשיך בלעדיו: " + e.getMessage());
+            }
+        }
+        if (reportSeconds > 0) {
+            ServerReport report = new ServerReport(context);
+            context.getScheduler().scheduleAtFixedRate(report, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+        }
+        startMetrics();
+    }
+
+    /** Publishes the server metrics through JMX and, if a port was given, over HTTP. */
+    private void startMetrics() {
+        ServerMetrics metrics = context.getMetrics();
+        metrics.registerMBean();
+        if (metricsPort > 0) {
+            try {
+                metricsEndpoint = new MetricsEndpoint(metrics);
+                metricsEndpoint.start(metricsPort);
+                System.out.println("מדדי השרת זמינים בכתובת http://127.0.0.1:" + metricsPort + "/metrics");
+            } catch (IOException e) {
+                System.err.println("שגיאה בהפעלת נקודת המדדים: " + e.getMessage());
+            }
+        }
     }
 
     /** Starts the server and accepts new client connections.
-     *  Also starts a background thread to match players into games.
+     *  Every new player is probed on the thread pool and then handed to the matchmaker.
      */
     public void start() {
+        createThreads();
+        if (mode == Mode.NIO) {
+            startNio();
+            return;
+        }
         try {
             serverSocket = new ServerSocket(port);
-            System.out.println("שרת משחק הזיכרון הופעל על פורט " + port);
+            System.out.println("שרת משחק הזיכרון הופעל על פורט " + port + " (" + mode.name().toLowerCase() + ")");
             System.out.println("גודל לוח: " + boardRows + "x" + boardCols);
             System.out.println("ממתין לשחקנים...");
 
-            // Thread dedicated to pairing players
-            threadPool.execute(this::matchPlayers);
+            // Thread dedicated to grouping players
+            matchmaker = new Matchmaker<>(playersPerGame, this::startSession, threadPool, context.getMetrics());
+            context.getMetrics().setWaitingClients(matchmaker::size);
+            matchmaker.start(ServerThreads.platform("matchmaker"));
 
             // Accepting new clients
             while (!serverSocket.isClosed()) {
                 Socket clientSocket = serverSocket.accept();
                 System.out.println("שחקן התחבר");
-                waitingClients.offer(clientSocket);
+                threadPool.execute(() -> admitPlayer(clientSocket));
             }
         } catch (IOException e) {
             System.err.println("שגיאה בהפעלת השרת: " + e.getMessage());
         }
     }
 
-    /** Matches two clients together and starts a new game session in a thread. */
-    private void matchPlayers() {
-        while (true) {
-            try {
-                Socket player1 = waitingClients.take();
-                Socket player2 = waitingClients.take();
+    /** Starts the event-loop core instead of the blocking accept loop. */
+    private void startNio() {
+        try {
+            nioCore = new NioServerCore(port, boardRows, boardCols, ioThreads, context);
+            System.out.println("שרת משחק הזיכרון הופעל על פורט " + port + " (NIO, " + ioThreads + " תהליכוני קלט/פלט)");
+            System.out.println("גודל לוח: " + boardRows + "x" + boardCols);
+            System.out.println("ממתין לשחקנים...");
+            nioCore.start();
+        } catch (IOException e) {
+            System.err.println("שגיאה בהפעלת השרת: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Performs the handshake with a new player, reads the rating it announces in JOIN_GAME
+     * and measures its round-trip time with a PING, then queues it for matchmaking.
+     * The handshake and the wait for the PONG each give up after {@link Matchmaker#PING_TIMEOUT_MILLIS},
+     * so a client that sends nothing, or keeps sending other messages, does not hold a thread.
+     * A client that does not answer within the timeout is queued without an RTT; the matchmaker
+     * then skips its liveness PINGs and drops it once it finds the connection closed.
+     * A client that sent a RESUME_REQUEST instead of JOIN_GAME goes back to its running session,
+     * and one that sent SPECTATE starts watching a game.
+     */
+    private void admitPlayer(Socket socket) {
+        SocketPlayerConnection connection;
+        try {
+            socket.setSoTimeout((int) Matchmaker.PING_TIMEOUT_MILLIS);
+            connection = new SocketPlayerConnection(socket, context.getMetrics());
+        } catch (IOException e) {
+            // Includes a SocketTimeoutException from a client that never finished the handshake
+            closeQuietly(socket);
+            return;
+        }
+        int rating = Matchmaker.DEFAULT_RATING;
+        long rttMicros = Matchmaker.UNKNOWN_RTT;
+        String resumeToken = null;
+        boolean spectator = false;
+        Integer watchedSession = null;
+        try {
+            long pingSent = System.nanoTime();
+            long deadline = pingSent + TimeUnit.MILLISECONDS.toNanos(Matchmaker.PING_TIMEOUT_MILLIS);
+            connection.send(new GameMessage(GameMessage.MessageType.PING, (Object) pingSent));
+            while (rttMicros < 0) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    throw new SocketTimeoutException("no PONG before the deadline");
+                }
+                connection.setReadTimeout((int) remainingMillis);
+                Object obj = connection.receive();
+                if (!(obj instanceof GameMessage)) continue;
+                GameMessage message = (GameMessage) obj;
+                if (message.getType() == GameMessage.MessageType.JOIN_GAME && message.getData() instanceof Integer) {
+                    rating = (Integer) message.getData();
+                } else if (message.getType() == GameMessage.MessageType.RESUME_REQUEST) {
+                    resumeToken = message.getMessage();
+                } else if (message.getType() == GameMessage.MessageType.SPECTATE) {
+                    spectator = true;
+                    watchedSession = message.getData() instanceof Integer ? (Integer) message.getData() : null;
+                } else if (message.getType() == GameMessage.MessageType.PONG) {
+                    rttMicros = (System.nanoTime() - pingSent) / 1000;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            // Client did not answer the PING; it is matched by rating only
+        } catch (IOException | ClassNotFoundException e) {
+            connection.close();
+            return;
+        }
+        try {
+            connection.setReadTimeout(0);
+        } catch (IOException e) {
+            connection.close();
+            return;
+        }
+        if (resumeToken != null) {
+            resume(connection, resumeToken);
+        } else if (spectator) {
+            watch(connection, watchedSession);
+        } else {
+            matchmaker.enqueue(connection, rating, rttMicros);
+        }
+    }
+
+    /** Lets a spectator watch the requested game, or tells it that there is none and closes it. */
+    private void watch(SocketPlayerConnection connection, Integer sessionId) {
+        GameSession session = context.getSessionRegistry().findSession(sessionId);
+        if (session != null && session.watch(connection)) {
+            return;
+        }
+        try {
+            connection.send(new GameMessage(GameMessage.MessageType.GAME_END, "אין משחק פעיל לצפייה"));
+        } catch (IOException e) {
+            // The spectator is gone anyway
+        }
+        connection.close();
+    }
 
-                System.out.println("משחק התחיל!");
+    /** Gives a reconnected player its seat back, or tells it why that is not possible and closes it. */
+    private void resume(SocketPlayerConnection connection, String resumeToken) {
+        SessionRegistry.Seat seat = context.getSessionRegistry().find(resumeToken);
+        if (seat != null && seat.getSession().resume(seat.getPlayerNumber(), connection)) {
+            context.getMetrics().resumeAttempted(true);
+            return;
+        }
+        context.getMetrics().resumeAttempted(false);
+        try {
+            connection.send(new GameMessage(GameMessage.MessageType.RESUME_FAILED, "המשחק כבר לא פעיל"));
+        } catch (IOException e) {
+            // The player is gone anyway
+        }
+        connection.close();
+    }
 
-                GameSession gameSession = new GameSession(player1, player2, boardRows, boardCols);
-                threadPool.execute(gameSession);
+    /** Runs a game between players chosen by the matchmaker, on the pool thread that checked them. */
+    private void startSession(List<PlayerConnection> players) {
+        System.out.println("משחק התחיל!");
+        new GameSession(players, boardRows, boardCols, context).run();
+    }
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
         }
     }
 
     /** Stops the server and shuts down the thread pool. */
     public void stop() {
+        if (nioCore != null) {
+            nioCore.stop();
+        }
+        if (matchmaker != null) {
+            matchmaker.stop();
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+        if (context != null) {
+            if (reportSeconds > 0) {
+                new ServerReport(context).run();
+            }
+            context.getMetrics().unregisterMBean();
+            context.shutdown();
+        }
+        if (journal != null) {
+            journal.close();
+        }
         try {
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
-            threadPool.shutdown();
+            if (threadPool != null) threadPool.shutdown();
         } catch (IOException e) {
             System.err.println("שגיאה בסגירת השרת: " + e.getMessage());
         }
@@ -86,7 +330,7 @@ public class MemoryGameServer {
 
     /**
      * Checks if the chosen board size is valid.
-     * Returns false if size is too big, too small, or requires too many images.
+     * Returns false if size is too big, too small, or has an odd number of cards.
      */
     private static boolean isValidBoardSize(int rows, int cols) {
         if (rows <= 0 || cols <= 0) {
@@ -105,25 +349,58 @@ public class MemoryGameServer {
             return false;
         }
 
-        int pairsNeeded = totalCells / 2;
-        if (pairsNeeded > MAX_IMAGES) {
-            System.err.println("שגיאה: גודל הלוח דורש יותר מדי תמונות!");
-            return false;
-        }
-
         return true;
     }
 
     /**
      * Main function of the server. Starts the server with given arguments.
-     * Usage: java MemoryGameServer <port> <N>
-     * N is the size of the board (NxN)
+     * Usage: java MemoryGameServer <port> <N> [--mode=blocking|virtual|nio] [--io-threads=K] [--report=SECONDS]
+     *        [--reveal-delay=MS] [--hidden-board] [--metrics-port=PORT] [--resume-grace=SECONDS]
+     *        [--players=N] [--journal=DIR] [--journal-retention=HOURS]
+     * The board size is N for an NxN board or ROWSxCOLS for a rectangular one
      */
-    public static void main(String[] args) {
+    public static void main(String[] rawArgs) {
         int port = 8080; // Default port
         int boardRows = 4; // Default board size
         int boardCols = 4;
 
+        // Options start with "--", everything else is positional
+        Map<String, String> options = new HashMap<>();
+        List<String> positional = new ArrayList<>();
+        for (String arg : rawArgs) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "" : arg.substring(eq + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+        String[] args = positional.toArray(new String[0]);
+
+        Mode mode = Mode.BLOCKING;
+        try {
+            mode = Mode.valueOf(options.getOrDefault("mode", "blocking").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("מצב שרת לא תקין, משתמש בברירת מחדל: blocking");
+        }
+        int ioThreads = parseIntOption(options, "io-threads", 2);
+        int reportSeconds = options.containsKey("report") ? parseIntOption(options, "report", 10) : 0;
+        int revealDelayMillis = parseIntOption(options, "reveal-delay", 2000);
+        boolean hiddenBoard = options.containsKey("hidden-board");
+        int metricsPort = options.containsKey("metrics-port") ? parseIntOption(options, "metrics-port", 9090) : 0;
+        int playersPerGame = parseIntOption(options, "players", GameSession.MIN_PLAYERS);
+        if (playersPerGame < GameSession.MIN_PLAYERS || playersPerGame > GameSession.MAX_PLAYERS) {
+            System.err.println("מספר שחקנים לא תקין (" + GameSession.MIN_PLAYERS + "-" + GameSession.MAX_PLAYERS
+                    + "), משתמש בברירת מחדל: " + GameSession.MIN_PLAYERS);
+            playersPerGame = GameSession.MIN_PLAYERS;
+        }
+        int resumeGraceSeconds = "0".equals(options.get("resume-grace")) ? 0 : parseIntOption(options, "resume-grace", 30);
+        String journalDirectory = options.containsKey("journal") ? options.get("journal") : null;
+        if (journalDirectory != null && journalDirectory.isEmpty()) {
+            journalDirectory = "journal";
+        }
+        int journalRetentionHours = parseIntOption(options, "journal-retention", 7 * 24);
+
         System.out.println("מפעיל שרת משחק הזיכרון...");
 
         // Read port number from command-line
@@ -139,12 +416,12 @@ public class MemoryGameServer {
             }
         }
 
-        // Read board size from command-line
+        // Read board size from command-line: N or ROWSxCOLS
         if (args.length >= 2) {
             try {
-                int boardSize = Integer.parseInt(args[1]);
-                boardRows = boardSize;
-                boardCols = boardSize;
+                String[] size = args[1].toLowerCase().split("x", 2);
+                boardRows = Integer.parseInt(size[0].trim());
+                boardCols = size.length == 2 ? Integer.parseInt(size[1].trim()) : boardRows;
             } catch (NumberFormatException e) {
                 System.err.println("גודל לוח לא תקין, משתמש בברירת מחדל: 4x4");
                 boardRows = 4;
@@ -182,13 +459,41 @@ public class MemoryGameServer {
         System.out.println("הגדרות השרת:");
         System.out.println("פורט: " + port);
         System.out.println("לוח: " + boardRows + "x" + boardCols);
+        System.out.println("מצב: " + mode.name().toLowerCase());
+        System.out.println("שחקנים במשחק: " + playersPerGame);
+        if (hiddenBoard) {
+            System.out.println("לוח מוסתר: ערכי הקלפים נשלחים רק כשקלף נחשף");
+        }
 
         // Start server
         MemoryGameServer server = new MemoryGameServer(port, boardRows, boardCols);
+        server.setMode(mode, ioThreads);
+        server.setReportInterval(reportSeconds);
+        server.setRevealDelayMillis(revealDelayMillis);
+        server.setHiddenBoard(hiddenBoard);
+        server.setMetricsPort(metricsPort);
+        server.setResumeGraceMillis(resumeGraceSeconds * 1000L);
+        server.setPlayersPerGame(playersPerGame);
+        if (journalDirectory != null) {
+            server.setJournal(Paths.get(journalDirectory), TimeUnit.HOURS.toMillis(journalRetentionHours));
+        }
 
         // Add shutdown hook to stop server when the program exits
         Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
 
         server.start();
     }
+
+    /** Reads a positive integer option, falling back to the default when missing or invalid. */
+    private static int parseIntOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) return defaultValue;
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) return parsed;
+        } catch (NumberFormatException ignored) {
+        }
+        System.err.println("ערך לא תקין עבור --" + name + ", משתמש בברירת מחדל: " + defaultValue);
+        return defaultValue;
+    }
 }
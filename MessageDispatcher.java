@@ -0,0 +1,121 @@
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Hands server messages to the FX thread in one batch per frame instead of one Platform.runLater per message.
+ * The listener thread only adds to a lock-free queue; the first message of a burst starts an AnimationTimer,
+ * which drains everything that arrived before the next pulse and stops again once the queue is empty.
+ * <p>
+ * Within a batch, a message whose only effect is replaced by a later one is skipped: a PLAYER_TURN
+ * followed by another PLAYER_TURN or a TURN_RESULT, and a status line (PLAYER_LEFT, PLAYER_RESUMED)
+ * followed by any message that sets the status again.
+ */
+public class MessageDispatcher extends AnimationTimer {
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    private final Consumer<GameMessage> handler;
+    private final ConcurrentLinkedQueue<GameMessage> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final List<GameMessage> batch = new ArrayList<>();
+
+    // Used on the FX thread only
+    private final LatencyHistogram uiTasksPerSecond = new LatencyHistogram();
+    private final LatencyHistogram batchSizes = new LatencyHistogram();
+    private long windowStart;
+    private int windowTasks;
+    private long handled;
+    private long collapsed;
+
+    /** Creates a dispatcher that runs handler on the FX thread for each message that is not collapsed. */
+    public MessageDispatcher(Consumer<GameMessage> handler) {
+        this.handler = handler;
+    }
+
+    /** Queues a message from any thread and makes sure a frame will pick it up. */
+    public void post(GameMessage message) {
+        queue.offer(message);
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::start);
+        }
+    }
+
+    /** Drops the messages not handled yet, e.g. those of a connection that was just closed. FX thread only. */
+    public void clear() {
+        queue.clear();
+    }
+
+    @Override
+    public void handle(long now) {
+        GameMessage message;
+        while ((message = queue.poll()) != null) {
+            batch.add(message);
+        }
+        if (!batch.isEmpty()) {
+            dispatch(now);
+        }
+        if (queue.isEmpty()) {
+            stop();
+            scheduled.set(false);
+            // A message posted between the last poll and the flag reset would otherwise wait for the next one
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                start();
+            }
+        }
+    }
+
+    private void dispatch(long now) {
+        batchSizes.record(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            GameMessage message = batch.get(i);
+            if (i + 1 < batch.size() && supersedes(batch.get(i + 1), message)) {
+                collapsed++;
+            } else {
+                handled++;
+                handler.accept(message);
+            }
+        }
+        batch.clear();
+
+        if (windowStart == 0 || now - windowStart >= SECOND_NANOS) {
+            if (windowStart != 0) uiTasksPerSecond.record(windowTasks);
+            windowStart = now;
+            windowTasks = 0;
+        }
+        windowTasks++;
+    }
+
+    /** Returns true if handling next leaves nothing of what handling message did. */
+    private static boolean supersedes(GameMessage next, GameMessage message) {
+        switch (message.getType()) {
+            case PLAYER_TURN:
+                return next.getType() == GameMessage.MessageType.PLAYER_TURN
+                        || next.getType() == GameMessage.MessageType.TURN_RESULT;
+            case PLAYER_LEFT:
+            case PLAYER_RESUMED:
+                switch (next.getType()) {
+                    case PLAYER_LEFT:
+                    case PLAYER_RESUMED:
+                    case PLAYER_TURN:
+                    case TURN_RESULT:
+                        return true;
+                    default:
+                        return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    /** Returns "handled=.. collapsed=.. uiTasksPerSecond p50=.. batch p50=.." for the client log. */
+    public String formatStats() {
+        return "handled=" + handled + " collapsed=" + collapsed
+                + " uiTasksPerSecond " + uiTasksPerSecond.formatPercentiles()
+                + " batch " + batchSizes.formatPercentiles();
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * Sends and receives game objects over a blocking socket in one of the two wire formats.
+ * The client picks the format; the server detects it from the first bytes the client sends.
+ * On the server the stream reports message sizes and encoding times to {@link ServerMetrics}.
+ * <p>
+ * In Java format the object stream is reset after every message, so neither side's handle table
+ * keeps the messages of a long game alive, and a message is never written as a back-reference
+ * to an earlier one that may have changed since.
+ */
+public class MessageStream implements Closeable {
+
+    /** The supported wire formats. */
+    public enum Format {
+        JAVA,       // Java serialization through object streams
+        BINARY      // BinaryProtocol frames
+    }
+
+    /**
+     * The classes a Java-format peer may send, and nothing else: anything outside the game's own
+     * message types is rejected before it is created. Arrays are limited to the binary frame size.
+     */
+    static final ObjectInputFilter GAME_CLASSES = ObjectInputFilter.Config.createFilter(
+            "maxdepth=16;maxarray=" + BinaryProtocol.MAX_FRAME_LENGTH
+                    + ";GameMessage;GameMessage$MessageType;CardSelection;TurnResult;BoardSnapshot;BoardDelta"
+                    + ";GameStartInfo;GameBoard;java.lang.Enum;java.lang.Number;java.lang.Integer;java.lang.Long"
+                    + ";java.lang.String;!*");
+
+    private final Socket socket;
+    private final Format format;
+    private final CountingOutputStream output;
+    private final CountingInputStream input;
+    private final PushbackInputStream pushback;
+    private ObjectOutputStream objectOutput;
+    private ObjectInputStream objectInput;
+    private ServerMetrics metrics;
+
+    private MessageStream(Socket socket, Format format, OutputStream output, PushbackInputStream input) {
+        this.socket = socket;
+        this.format = format;
+        this.output = new CountingOutputStream(output);
+        this.input = new CountingInputStream(input);
+        this.pushback = input;
+    }
+
+    /**
+     * Opens the client side of a connection in the requested format.
+     * In binary format the client sends the hello and waits for the server to confirm it.
+     */
+    public static MessageStream connect(Socket socket, Format format) throws IOException {
+        OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+        PushbackInputStream input = new PushbackInputStream(new BufferedInputStream(socket.getInputStream()), 2);
+        MessageStream stream = new MessageStream(socket, format, output, input);
+        if (format == Format.BINARY) {
+            output.write(BinaryProtocol.hello(BinaryProtocol.VERSION));
+            output.flush();
+            int first = input.read();
+            int second = input.read();
+            int version = input.read();
+            if (!BinaryProtocol.isHello(first, second) || version != BinaryProtocol.VERSION) {
+                throw new StreamCorruptedException("server does not speak the binary protocol");
+            }
+        } else {
+            stream.openObjectStreams();
+        }
+        return stream;
+    }
+
+    /** Opens the server side of a connection, detecting the format from the client's first bytes. */
+    public static MessageStream accept(Socket socket) throws IOException {
+        OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+        PushbackInputStream input = new PushbackInputStream(new BufferedInputStream(socket.getInputStream()), 2);
+        int first = input.read();
+        int second = input.read();
+        if (first < 0 || second < 0) {
+            throw new EOFException("connection closed before the handshake");
+        }
+        if (BinaryProtocol.isHello(first, second)) {
+            int version = input.read();
+            if (version < 1) {
+                throw new StreamCorruptedException("invalid protocol version: " + version);
+            }
+            output.write(BinaryProtocol.hello(Math.min(version, BinaryProtocol.VERSION)));
+            output.flush();
+            return new MessageStream(socket, Format.BINARY, output, input);
+        }
+        input.unread(second);
+        input.unread(first);
+        MessageStream stream = new MessageStream(socket, Format.JAVA, output, input);
+        stream.openObjectStreams();
+        return stream;
+    }
+
+    /** Writes the stream header first so the other side can open its input. */
+    private void openObjectStreams() throws IOException {
+        objectOutput = new ObjectOutputStream(output);
+        objectOutput.flush();
+        objectInput = new ObjectInputStream(input);
+        objectInput.setObjectInputFilter(GAME_CLASSES);
+    }
+
+    /** Returns the format this stream uses. */
+    public Format getFormat() {
+        return format;
+    }
+
+    /** Records every message written or read from now on. */
+    public void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Writes one GameMessage or CardSelection and flushes it. In Java format the stream is reset right after it. */
+    public void write(Object message) throws IOException {
+        write(message, true);
+    }
+
+    /**
+     * Writes one GameMessage or CardSelection, flushing it only if asked to, so a writer with several
+     * messages waiting can send them with one flush. In Java format the stream is reset right after it,
+     * and a message that is not flushed may be reported to the metrics with part of its bytes still buffered.
+     */
+    public synchronized void write(Object message, boolean flush) throws IOException {
+        long start = metrics != null ? System.nanoTime() : 0;
+        long bytesBefore = output.count;
+        if (format == Format.BINARY) {
+            byte[] frame = BinaryProtocol.encode(message);
+            long encoded = metrics != null ? System.nanoTime() : 0;
+            output.write(frame);
+            if (flush) output.flush();
+            if (metrics != null) metrics.messageSent(message, format, frame.length, encoded - start);
+        } else {
+            objectOutput.writeObject(message);
+            objectOutput.reset();
+            long encoded = metrics != null ? System.nanoTime() : 0;
+            if (flush) objectOutput.flush();
+            if (metrics != null) metrics.messageSent(message, format, (int) (output.count - bytesBefore), encoded - start);
+        }
+    }
+
+    /**
+     * Writes a message that is broadcast to several streams, reusing its encoded bytes, and flushes it.
+     * In Java format the bytes start with a reset, so this stream resets its own handles to match the reader.
+     */
+    public synchronized void write(OutboundMessage message) throws IOException {
+        ByteBuffer bytes = message.encode(format, metrics);
+        int length = bytes.remaining();
+        output.write(bytes.array(), bytes.arrayOffset() + bytes.position(), length);
+        if (format == Format.JAVA) {
+            objectOutput.reset();
+            objectOutput.flush();
+        } else {
+            output.flush();
+        }
+        if (metrics != null) metrics.messageWritten(message.getMessage(), length);
+    }
+
+    /** Sends everything written so far. */
+    public synchronized void flush() throws IOException {
+        if (objectOutput != null) {
+            objectOutput.flush();
+        } else {
+            output.flush();
+        }
+    }
+
+    /**
+     * Waits up to the timeout for the peer to close the connection, without consuming anything it sent.
+     * Returns true if it closed or the connection failed, false if it is still there (silent or sending).
+     * Must not be called while another thread reads from the stream.
+     */
+    public boolean isPeerClosed(int timeoutMillis) {
+        try {
+            socket.setSoTimeout(timeoutMillis);
+            try {
+                int next = pushback.read();
+                if (next < 0) return true;
+                pushback.unread(next);
+                return false;
+            } finally {
+                socket.setSoTimeout(0);
+            }
+        } catch (SocketTimeoutException e) {
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /** Blocks until the next GameMessage or CardSelection arrives. */
+    public Object read() throws IOException, ClassNotFoundException {
+        long bytesBefore = input.count;
+        Object message = format == Format.BINARY ? BinaryProtocol.read(input) : objectInput.readObject();
+        if (metrics != null) metrics.messageReceived(message, (int) (input.count - bytesBefore));
+        return message;
+    }
+
+    /** Closes the streams and the socket. */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (objectInput != null) objectInput.close();
+            if (objectOutput != null) objectOutput.close();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /** Counts the bytes written below the object stream, so a message's size is known after it was written. */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /** Counts the bytes consumed by the decoder. */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
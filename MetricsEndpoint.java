@@ -0,0 +1,46 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link ServerMetrics} as Prometheus text on http://127.0.0.1:PORT/metrics.
+ * The endpoint only listens on the loopback interface; a scraper or tunnel on the same host reads it.
+ */
+public class MetricsEndpoint {
+    private final ServerMetrics metrics;
+    private HttpServer server;
+
+    /** Creates an endpoint for the given metrics. */
+    public MetricsEndpoint(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Starts listening on the given local port. Requests are answered on one background thread. */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(Executors.newSingleThreadExecutor(ServerThreads.platform("metrics-http")));
+        server.start();
+    }
+
+    /** Stops the HTTP server. */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = metrics.getPrometheusText().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector thread that multiplexes many player connections.
+ * Other threads never touch the selector directly; they queue registrations
+ * and write requests, which the loop applies on its own thread.
+ */
+public class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024); // shared by all connections of this loop
+    private final Queue<NioPlayerConnection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<NioPlayerConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    /** Opens the selector of this loop. */
+    public NioEventLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /** Hands a new connection to this loop. */
+    public void register(NioPlayerConnection connection) {
+        pendingRegistrations.offer(connection);
+        selector.wakeup();
+    }
+
+    /** Asks the loop to flush the outbound queue of a connection. */
+    public void requestWrite(NioPlayerConnection connection) {
+        pendingWrites.offer(connection);
+        selector.wakeup();
+    }
+
+    /** Runs the select loop until the loop is stopped. */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                applyPendingRegistrations();
+                applyPendingWrites();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioPlayerConnection connection = (NioPlayerConnection) key.attachment();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        connection.onReadable(readBuffer);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("שגיאה בלולאת האירועים: " + e.getMessage());
+            }
+        }
+    }
+
+    private void applyPendingRegistrations() {
+        NioPlayerConnection connection;
+        while ((connection = pendingRegistrations.poll()) != null) {
+            try {
+                SelectionKey key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                connection.setSelectionKey(key);
+                connection.onWritable();
+            } catch (IOException e) {
+                connection.onDisconnected();
+            }
+        }
+    }
+
+    private void applyPendingWrites() {
+        NioPlayerConnection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            connection.onWritable();
+        }
+    }
+
+    /** Stops the loop and closes its selector. */
+    public void stop() {
+        running = false;
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("שגיאה בסגירת לולאת האירועים: " + e.getMessage());
+        }
+    }
+}
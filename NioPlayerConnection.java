@@ -0,0 +1,431 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A non-blocking player connection driven by an {@link NioEventLoop}.
+ * Outgoing messages are serialized on the sending thread and queued for the loop;
+ * incoming bytes are decoded on the loop and handed to the session on the dispatcher, one task at a time
+ * per connection, so the session sees each player's messages in the order they were sent, as in blocking mode.
+ * The wire format is detected from the first bytes the client sends, as in {@link MessageStream}.
+ */
+public class NioPlayerConnection implements PlayerConnection {
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final Executor dispatcher;
+    private final Consumer<NioPlayerConnection> onReady;
+    private final ServerMetrics metrics;
+    private volatile SelectionKey selectionKey;
+
+    private final Queue<Runnable> inbound = new ConcurrentLinkedQueue<>();    // session calls waiting for the dispatcher
+    private final AtomicBoolean inboundScheduled = new AtomicBoolean();
+    private final Queue<PendingWrite> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedWrites = new AtomicInteger();
+    private final ByteArrayOutputStream encodeBuffer = new ByteArrayOutputStream();
+    private ObjectOutputStream encoder;
+    private FrameDecoder decoder;
+    private volatile MessageStream.Format format;   // null until the handshake bytes arrived
+    private final byte[] hello = new byte[3];
+    private int helloLength;
+
+    // Probe before the player is paired: rating from JOIN_GAME, round-trip time from PING/PONG
+    private volatile int rating = Matchmaker.DEFAULT_RATING;
+    private volatile long rttMicros = Matchmaker.UNKNOWN_RTT;
+    private volatile long pingSentNanos;
+    private volatile Consumer<NioPlayerConnection> onProbed;
+    private final AtomicBoolean probeFinished = new AtomicBoolean();
+    private volatile CompletableFuture<Boolean> pendingPong;     // liveness check waiting for its PONG
+    private volatile Long pendingPingNanos;
+    private volatile String resumeToken;                          // set if the player asked to take back its seat
+    private volatile boolean spectator;                           // set if the client only wants to watch
+    private volatile Integer watchedSession;                      // session the spectator asked for, null for the newest
+
+    private volatile GameSession session;
+    private volatile int playerNumber;
+    private volatile boolean closing;
+    private volatile boolean closed;
+
+    /**
+     * Wraps an accepted channel. onReady is called on the loop once the client's wire format is known.
+     * Message sizes and encoding times are recorded in the given metrics.
+     */
+    public NioPlayerConnection(SocketChannel channel, NioEventLoop loop, Executor dispatcher,
+                               Consumer<NioPlayerConnection> onReady, ServerMetrics metrics) {
+        this.channel = channel;
+        this.loop = loop;
+        this.dispatcher = dispatcher;
+        this.onReady = onReady;
+        this.metrics = metrics;
+    }
+
+    /** Binds this connection to a session once the player has been paired. */
+    public void attach(GameSession session, int playerNumber) {
+        this.playerNumber = playerNumber;
+        this.session = session;
+    }
+
+    /**
+     * Sends a PING to measure the round-trip time. onProbed is called once, when the PONG arrives
+     * or when {@link #finishProbe()} is called first because the client did not answer.
+     */
+    public void startProbe(Consumer<NioPlayerConnection> onProbed) throws IOException {
+        this.onProbed = onProbed;
+        pingSentNanos = System.nanoTime();
+        send(new GameMessage(GameMessage.MessageType.PING, (Object) pingSentNanos));
+    }
+
+    /** Ends the probe with whatever was learned so far. Does nothing if it already ended. */
+    public void finishProbe() {
+        Consumer<NioPlayerConnection> callback = onProbed;
+        if (callback != null && probeFinished.compareAndSet(false, true)) {
+            callback.accept(this);
+        }
+    }
+
+    /** Sends a PING and waits for the event loop to see its PONG, giving up after the timeout. */
+    @Override
+    public boolean ping(long timeoutMillis) {
+        CompletableFuture<Boolean> pong = new CompletableFuture<>();
+        Long sent = System.nanoTime();
+        pendingPingNanos = sent;
+        pendingPong = pong;
+        try {
+            if (!isOpen()) return false;
+            send(new GameMessage(GameMessage.MessageType.PING, (Object) sent));
+            return pong.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            pendingPong = null;
+        }
+    }
+
+    /** Returns the rating the player announced, or the default rating. */
+    public int getRating() {
+        return rating;
+    }
+
+    /** Returns the token of a RESUME_REQUEST the player sent instead of joining a new game, or null. */
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    /** Returns true if the client sent SPECTATE instead of joining a game. */
+    public boolean isSpectator() {
+        return spectator;
+    }
+
+    /** Returns the number of the session a spectator wants to watch, or null for the newest one. */
+    public Integer getWatchedSession() {
+        return watchedSession;
+    }
+
+    /** Returns the measured round-trip time in microseconds, or {@link Matchmaker#UNKNOWN_RTT}. */
+    public long getRttMicros() {
+        return rttMicros;
+    }
+
+    /** Serializes the message on the calling thread and queues it for the event loop. */
+    @Override
+    public void send(GameMessage message) throws IOException {
+        if (closed) {
+            throw new IOException("connection closed");
+        }
+        long start = System.nanoTime();
+        byte[] bytes;
+        if (format == MessageStream.Format.BINARY) {
+            bytes = BinaryProtocol.encode(message);
+            enqueue(new PendingWrite(ByteBuffer.wrap(bytes), null));
+        } else {
+            // Queued under the lock, so the frames arrive in the order the encoder's handles assume.
+            // The reset keeps the handle tables of both sides from growing over the game.
+            synchronized (encodeBuffer) {
+                encoder.writeObject(message);
+                encoder.reset();
+                encoder.flush();
+                bytes = encodeBuffer.toByteArray();
+                encodeBuffer.reset();
+                enqueue(new PendingWrite(ByteBuffer.wrap(bytes), null));
+            }
+        }
+        metrics.messageSent(message, format, bytes.length, System.nanoTime() - start);
+        loop.requestWrite(this);
+    }
+
+    /**
+     * Queues the bytes the message was encoded to for all players. In Java format the bytes start with a reset,
+     * so this connection's encoder is reset as well to match the reader. The message's pooled buffers are
+     * held until the bytes were written or the connection closed.
+     */
+    @Override
+    public void send(OutboundMessage message) throws IOException {
+        if (closed) {
+            throw new IOException("connection closed");
+        }
+        ByteBuffer bytes = message.encode(format, metrics);
+        int length = bytes.remaining();
+        message.retain();
+        if (format == MessageStream.Format.BINARY) {
+            enqueue(new PendingWrite(bytes, message));
+        } else {
+            synchronized (encodeBuffer) {
+                enqueue(new PendingWrite(bytes, message));
+                encoder.reset();
+                encoder.flush();
+                enqueue(new PendingWrite(ByteBuffer.wrap(encodeBuffer.toByteArray()), null));
+                encodeBuffer.reset();
+            }
+        }
+        metrics.messageWritten(message.getMessage(), length);
+        loop.requestWrite(this);
+    }
+
+    /** Input arrives through the event loop, so there is nothing to block on. */
+    @Override
+    public Object receive() {
+        throw new UnsupportedOperationException("NIO connections are read by the event loop");
+    }
+
+    /** Closes the channel after the queued messages were written. */
+    @Override
+    public void close() {
+        closing = true;
+        loop.requestWrite(this);
+    }
+
+    /** Returns true while the channel is open and not being closed. */
+    public boolean isOpen() {
+        return !closing && !closed && channel.isOpen();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void setSelectionKey(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    /** Called by the loop when the channel has bytes to read. The buffer is shared by the whole loop. */
+    void onReadable(ByteBuffer readBuffer) {
+        try {
+            readBuffer.clear();
+            int count = channel.read(readBuffer);
+            if (count < 0) {
+                onDisconnected();
+                return;
+            }
+            int offset = 0;
+            if (format == null) {
+                offset = readHello(readBuffer.array(), count);
+                if (format == null) {
+                    return;
+                }
+            }
+            decoder.append(readBuffer.array(), offset, count - offset);
+
+            Object obj;
+            while ((obj = decoder.next()) != null) {
+                metrics.messageReceived(obj, decoder.lastFrameLength());
+                GameSession target = session;
+                if (target != null) {
+                    final Object message = obj;
+                    final int player = playerNumber;
+                    dispatch(() -> target.onPlayerMessage(player, message));
+                } else {
+                    onLobbyMessage(obj);
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            onDisconnected();
+        } catch (RuntimeException e) {
+            // Whatever a client sends may only cost that client its connection, never the loop
+            System.err.println("שגיאה בפענוח הודעה מהלקוח: " + e);
+            onDisconnected();
+        }
+    }
+
+    /** Handles what a player sends before it is paired: its rating, resume token or SPECTATE, and the answer to the PING. */
+    private void onLobbyMessage(Object obj) {
+        if (!(obj instanceof GameMessage)) return;
+        GameMessage message = (GameMessage) obj;
+        if (message.getType() == GameMessage.MessageType.JOIN_GAME && message.getData() instanceof Integer) {
+            rating = (Integer) message.getData();
+        } else if (message.getType() == GameMessage.MessageType.RESUME_REQUEST) {
+            resumeToken = message.getMessage();
+        } else if (message.getType() == GameMessage.MessageType.SPECTATE) {
+            watchedSession = message.getData() instanceof Integer ? (Integer) message.getData() : null;
+            spectator = true;
+        } else if (message.getType() == GameMessage.MessageType.PONG) {
+            CompletableFuture<Boolean> pong = pendingPong;
+            if (pong != null && message.getData() != null && message.getData().equals(pendingPingNanos)) {
+                pong.complete(true);
+            } else if (rttMicros < 0) {
+                rttMicros = (System.nanoTime() - pingSentNanos) / 1000;
+                finishProbe();
+            }
+        }
+    }
+
+    /**
+     * Collects the first bytes of the connection and picks the wire format.
+     * Returns how many bytes of the buffer were used by the handshake.
+     */
+    private int readHello(byte[] data, int count) throws IOException {
+        int used = 0;
+        while (used < count && helloLength < hello.length) {
+            hello[helloLength++] = data[used++];
+            if (helloLength == 2 && !BinaryProtocol.isHello(hello[0], hello[1])) {
+                // Java serialization: the bytes seen so far belong to the stream header
+                format = MessageStream.Format.JAVA;
+                decoder = new SerializedFrameDecoder();
+                decoder.append(hello, 0, helloLength);
+                synchronized (encodeBuffer) {
+                    encoder = new ObjectOutputStream(encodeBuffer);
+                    encoder.flush();
+                    enqueue(new PendingWrite(ByteBuffer.wrap(encodeBuffer.toByteArray()), null));
+                    encodeBuffer.reset();
+                }
+                onWritable();
+                onReady.accept(this);
+                return used;
+            }
+        }
+        if (helloLength == hello.length) {
+            int version = hello[2];
+            if (version < 1) {
+                throw new StreamCorruptedException("invalid protocol version: " + version);
+            }
+            format = MessageStream.Format.BINARY;
+            decoder = new BinaryFrameDecoder();
+            enqueue(new PendingWrite(ByteBuffer.wrap(BinaryProtocol.hello(Math.min(version, BinaryProtocol.VERSION))), null));
+            onWritable();
+            onReady.accept(this);
+        }
+        return used;
+    }
+
+    /** Queues bytes for the event loop to write. */
+    private void enqueue(PendingWrite write) {
+        queuedWrites.incrementAndGet();
+        outbound.offer(write);
+    }
+
+    @Override
+    public int getQueuedWrites() {
+        return queuedWrites.get();
+    }
+
+    /** Called by the loop to write as much of the outbound queue as the socket accepts. */
+    void onWritable() {
+        SelectionKey key = selectionKey;
+        if (key == null || closed) {
+            return;
+        }
+        try {
+            PendingWrite write;
+            while ((write = outbound.peek()) != null) {
+                channel.write(write.buffer);
+                if (write.buffer.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (outbound.poll() == write) {
+                    queuedWrites.decrementAndGet();
+                    write.release();
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            if (closing) {
+                closeChannel();
+            }
+        } catch (IOException e) {
+            onDisconnected();
+        }
+    }
+
+    /** Called when the peer went away or the stream could not be decoded. */
+    void onDisconnected() {
+        boolean wasClosed = closed;
+        closeChannel();
+        CompletableFuture<Boolean> pong = pendingPong;
+        if (pong != null) {
+            pong.complete(false);
+        }
+        GameSession target = session;
+        if (!wasClosed && !closing && target != null) {
+            dispatch(() -> target.onPlayerDisconnected(playerNumber, this));
+        }
+    }
+
+    /**
+     * Runs a session call on the dispatcher after the calls queued before it. At most one dispatcher task
+     * drains this connection at a time; other connections are handled in parallel.
+     */
+    private void dispatch(Runnable call) {
+        inbound.offer(call);
+        if (inboundScheduled.compareAndSet(false, true)) {
+            dispatcher.execute(this::drainInbound);
+        }
+    }
+
+    private void drainInbound() {
+        Runnable call;
+        while ((call = inbound.poll()) != null) {
+            try {
+                call.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        inboundScheduled.set(false);
+        // A call queued after the last poll but before the flag was cleared would otherwise wait for the next one
+        if (!inbound.isEmpty() && inboundScheduled.compareAndSet(false, true)) {
+            dispatcher.execute(this::drainInbound);
+        }
+    }
+
+    private void closeChannel() {
+        closed = true;
+        PendingWrite write;
+        while ((write = outbound.poll()) != null) {
+            queuedWrites.decrementAndGet();
+            write.release();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** Bytes waiting for the socket, with the broadcast message they belong to, if any. */
+    private static final class PendingWrite {
+        final ByteBuffer buffer;
+        final OutboundMessage owner;
+
+        PendingWrite(ByteBuffer buffer, OutboundMessage owner) {
+            this.buffer = buffer;
+            this.owner = owner;
+        }
+
+        void release() {
+            if (owner != null) {
+                owner.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Event-loop server core. A single acceptor hands every connection to one of a small,
+ * fixed set of selector threads, so the number of threads does not grow with the number of players.
+ * Decoded card selections are processed on a separate dispatch pool and never on the selector threads.
+ */
+public class NioServerCore {
+    private final int port;
+    private final int boardRows;
+    private final int boardCols;
+    private final ServerContext context;
+    private final NioEventLoop[] loops;
+    private final ExecutorService dispatchPool;
+    private final ExecutorService probePool;
+    private final Matchmaker<NioPlayerConnection> matchmaker;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+
+    /** Creates the core with the given number of I/O threads. */
+    public NioServerCore(int port, int boardRows, int boardCols, int ioThreads, ServerContext context) throws IOException {
+        this.port = port;
+        this.boardRows = boardRows;
+        this.boardCols = boardCols;
+        this.context = context;
+        this.loops = new NioEventLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new NioEventLoop();
+        }
+        this.dispatchPool = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                ServerThreads.platform("game-dispatch"));
+        // Liveness checks wait for a PONG, so they get their own threads instead of the dispatch pool
+        this.probePool = ServerThreads.virtualThreadsAvailable()
+                ? ServerThreads.threadPerTask(ServerThreads.virtual("liveness-probe"))
+                : Executors.newCachedThreadPool(ServerThreads.platform("liveness-probe"));
+        this.matchmaker = new Matchmaker<>(context.getPlayersPerGame(), this::startSession, probePool, context.getMetrics());
+        context.getMetrics().setWaitingClients(matchmaker::size);
+    }
+
+    /** Starts the I/O threads and the matcher, then accepts connections on the calling thread. */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+
+        for (int i = 0; i < loops.length; i++) {
+            Thread loopThread = new Thread(loops[i], "nio-io-" + i);
+            loopThread.setDaemon(true);
+            loopThread.start();
+        }
+        matchmaker.start(ServerThreads.platform("nio-matchmaker"));
+
+        while (serverChannel.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (serverChannel.isOpen()) throw e;
+                break;
+            }
+            channel.configureBlocking(false);
+            NioEventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+            NioPlayerConnection connection = new NioPlayerConnection(channel, loop, dispatchPool, this::probe,
+                    context.getMetrics());
+            loop.register(connection);
+            System.out.println("שחקן התחבר");
+        }
+    }
+
+    /**
+     * Called on the event loop once a player's wire format is known. The player is queued for
+     * matchmaking after it answered the PING, or after the timeout without an RTT.
+     * A player that sent a resume token goes back to its session instead, and a spectator starts watching.
+     */
+    private void probe(NioPlayerConnection connection) {
+        try {
+            connection.startProbe(probed -> {
+                if (probed.getResumeToken() != null) {
+                    dispatchPool.execute(() -> resume(probed));
+                } else if (probed.isSpectator()) {
+                    dispatchPool.execute(() -> watch(probed, probed.getWatchedSession()));
+                } else {
+                    matchmaker.enqueue(probed, probed.getRating(), probed.getRttMicros());
+                }
+            });
+            context.getScheduler().schedule(connection::finishProbe, Matchmaker.PING_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            connection.onDisconnected();
+        }
+    }
+
+    /** Gives a reconnected player its seat back, or tells it why that is not possible and closes it. */
+    private void resume(NioPlayerConnection connection) {
+        SessionRegistry.Seat seat = context.getSessionRegistry().find(connection.getResumeToken());
+        if (seat != null) {
+            connection.attach(seat.getSession(), seat.getPlayerNumber());
+            if (seat.getSession().resume(seat.getPlayerNumber(), connection)) {
+                context.getMetrics().resumeAttempted(true);
+                return;
+            }
+        }
+        context.getMetrics().resumeAttempted(false);
+        try {
+            connection.send(new GameMessage(GameMessage.MessageType.RESUME_FAILED, "המשחק כבר לא פעיל"));
+        } catch (IOException e) {
+            // The player is gone anyway
+        }
+        connection.close();
+    }
+
+    /** Lets a spectator watch the requested game, or tells it that there is none and closes it. */
+    private void watch(NioPlayerConnection connection, Integer sessionId) {
+        GameSession session = context.getSessionRegistry().findSession(sessionId);
+        if (session != null && session.watch(connection)) {
+            return;
+        }
+        try {
+            connection.send(new GameMessage(GameMessage.MessageType.GAME_END, "אין משחק פעיל לצפייה"));
+        } catch (IOException e) {
+            // The spectator is gone anyway
+        }
+        connection.close();
+    }
+
+    /** Starts a game between players chosen by the matchmaker. */
+    private void startSession(List<NioPlayerConnection> players) {
+        System.out.println("משחק התחיל!");
+        dispatchPool.execute(() -> {
+            GameSession gameSession = new GameSession(players, boardRows, boardCols, context);
+            for (int i = 0; i < players.size(); i++) {
+                players.get(i).attach(gameSession, i + 1);
+            }
+            gameSession.startEventDriven();
+        });
+    }
+
+    /** Closes the listening channel and stops all I/O threads. */
+    public void stop() {
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("שגיאה בסגירת השרת: " + e.getMessage());
+        }
+        matchmaker.stop();
+        for (NioEventLoop loop : loops) {
+            loop.stop();
+        }
+        dispatchPool.shutdown();
+        probePool.shutdown();
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A message that a session sends to several players. It is encoded at most once per wire format
+ * into a pooled buffer, and every connection in that format writes the same bytes, so a broadcast
+ * costs one encoding no matter how many players receive it.
+ * <p>
+ * Java serialization normally depends on what was written before on the same stream. The bytes
+ * made here start with a stream reset instead, so they can follow anything on any connection.
+ * <p>
+ * The buffers go back to the pool once the sender and every connection that queued the bytes
+ * for later have called {@link #release()}.
+ */
+public final class OutboundMessage {
+    private final GameMessage message;
+    private final BufferPool pool;
+    private final ByteBuffer[] encoded = new ByteBuffer[MessageStream.Format.values().length];
+    private final AtomicInteger references = new AtomicInteger(1);     // held by the sender
+
+    /** Wraps a message that is about to be broadcast, encoding it into buffers from the pool. */
+    public OutboundMessage(GameMessage message, BufferPool pool) {
+        this.message = message;
+        this.pool = pool;
+    }
+
+    /** Returns the message being sent. */
+    public GameMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns a view of the message's bytes in the given format, encoding it on the first call.
+     * The view shares the pooled buffer and must not be written to. The encoding time is recorded
+     * once in the metrics, if they are given.
+     */
+    public synchronized ByteBuffer encode(MessageStream.Format format, ServerMetrics metrics) throws IOException {
+        ByteBuffer bytes = encoded[format.ordinal()];
+        if (bytes == null) {
+            long start = System.nanoTime();
+            bytes = format == MessageStream.Format.BINARY ? BinaryProtocol.encode(message, pool) : serialize(message);
+            if (metrics != null) metrics.messageEncoded(format, System.nanoTime() - start);
+            encoded[format.ordinal()] = bytes;
+        }
+        return bytes.duplicate();
+    }
+
+    /** Keeps the buffers alive for a connection that writes them later. Must be paired with {@link #release()}. */
+    public void retain() {
+        references.incrementAndGet();
+    }
+
+    /** Drops one reference; the last one gives the buffers back to the pool. */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            synchronized (this) {
+                for (int i = 0; i < encoded.length; i++) {
+                    if (encoded[i] != null) {
+                        pool.release(encoded[i]);
+                        encoded[i] = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Serializes an object after a reset marker, without the stream header. */
+    private ByteBuffer serialize(Object object) throws IOException {
+        PooledOutputStream buffer = new PooledOutputStream(pool);
+        try {
+            ObjectOutputStream output = new ObjectOutputStream(buffer);
+            output.flush();
+            int header = buffer.size();
+            output.reset();
+            output.writeObject(object);
+            output.flush();
+            ByteBuffer bytes = buffer.buffer;
+            bytes.limit(buffer.size()).position(header);
+            return bytes;
+        } catch (IOException | RuntimeException e) {
+            pool.release(buffer.buffer);
+            throw e;
+        }
+    }
+
+    /** An output stream over a pooled buffer that moves to a bigger pooled buffer when it fills up. */
+    private static final class PooledOutputStream extends OutputStream {
+        private final BufferPool pool;
+        ByteBuffer buffer;
+
+        PooledOutputStream(BufferPool pool) {
+            this.pool = pool;
+            this.buffer = pool.acquire(BufferPool.MIN_SIZE);
+        }
+
+        int size() {
+            return buffer.position();
+        }
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            buffer.put(b, off, len);
+        }
+
+        private void ensure(int extra) {
+            if (buffer.remaining() < extra) {
+                ByteBuffer bigger = pool.acquire(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+                buffer.flip();
+                bigger.put(buffer);
+                pool.release(buffer);
+                buffer = bigger;
+            }
+        }
+    }
+}
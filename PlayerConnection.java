@@ -0,0 +1,58 @@
+import java.io.IOException;
+
+/**
+ * A connection to one player, as seen by a GameSession.
+ * The session only sends messages and closes connections; how bytes move is up to the implementation.
+ */
+public interface PlayerConnection {
+
+    /** Sends one message to the player. */
+    void send(GameMessage message) throws IOException;
+
+    /**
+     * Sends a message that other players receive as well. Connections that can write
+     * pre-encoded bytes reuse the encoding; others send the message itself.
+     */
+    default void send(OutboundMessage message) throws IOException {
+        send(message.getMessage());
+    }
+
+    /**
+     * Blocks until the next object arrives from the player.
+     * Only connections that are read by a dedicated thread support this.
+     */
+    Object receive() throws IOException, ClassNotFoundException;
+
+    /**
+     * Returns how many writes were handed to the connection but have not reached the socket yet.
+     * Connections that write before send returns have none.
+     */
+    default int getQueuedWrites() {
+        return 0;
+    }
+
+    /** Returns false once the connection is known to be closed. */
+    default boolean isOpen() {
+        return true;
+    }
+
+    /**
+     * Sends a PING and waits up to the timeout for the matching PONG. Returns false if the player
+     * did not answer in time or the connection failed. Only used while no session reads from the connection.
+     */
+    default boolean ping(long timeoutMillis) {
+        return isOpen();
+    }
+
+    /**
+     * Checks, without asking the player to answer, that it has not closed the connection, waiting up to
+     * the timeout to find out. For players that do not answer PINGs; only used while no session reads
+     * from the connection.
+     */
+    default boolean isConnected(long timeoutMillis) {
+        return isOpen();
+    }
+
+    /** Closes the connection. Messages already sent are delivered first when possible. */
+    void close();
+}
@@ -0,0 +1,134 @@
+import java.io.*;
+import java.util.function.Supplier;
+
+/**
+ * Compares Java serialization with {@link BinaryProtocol} for every message the game sends:
+ * bytes on the wire and encode/decode time per message.
+ * Usage: java ProtocolComparison [messagesPerRound]
+ * <p>
+ * Java messages are written the way {@link MessageStream} writes them, with a reset after each one,
+ * so every message carries its class descriptors and the Java size includes them. The board
+ * messages are the ones the server sends: a snapshot when a player joins or falls behind, and a
+ * delta of the two flipped cards per step, with and without the card values (--hidden-board).
+ */
+public class ProtocolComparison {
+    private static final int ROUNDS = 5;
+
+    /** A sample message and a factory for fresh copies of it. */
+    private static final class Sample {
+        final String name;
+        final Supplier<Object> factory;
+
+        Sample(String name, Supplier<Object> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+    }
+
+    /** Runs the comparison and prints one line per message type. */
+    public static void main(String[] args) throws Exception {
+        int count = args.length >= 1 ? Integer.parseInt(args[0]) : 20000;
+        GameBoard board = new GameBoard(6, 6);
+        board.markAsMatched(0, 0);
+        board.revealCard(1, 1);
+
+        Sample[] samples = {
+                new Sample("GAME_START", () -> {
+                    GameMessage msg = new GameMessage(GameMessage.MessageType.GAME_START, new GameStartInfo(2000));
+                    msg.setPlayerNumber(1);
+                    return msg;
+                }),
+                new Sample("BOARD_SNAPSHOT", () -> new GameMessage(GameMessage.MessageType.BOARD_SNAPSHOT,
+                        BoardSnapshot.of(board, 12, true))),
+                new Sample("BOARD_DELTA", () -> new GameMessage(GameMessage.MessageType.BOARD_DELTA,
+                        new BoardDelta(13, new int[] {8, 27}, new byte[] {BoardSnapshot.REVEALED, BoardSnapshot.REVEALED}))),
+                new Sample("BOARD_DELTA hid", () -> new GameMessage(GameMessage.MessageType.BOARD_DELTA,
+                        new BoardDelta(13, new int[] {8, 27}, new byte[] {BoardSnapshot.REVEALED, BoardSnapshot.REVEALED},
+                                new int[] {5, 5}))),
+                new Sample("PLAYER_TURN", () -> {
+                    GameMessage msg = new GameMessage(GameMessage.MessageType.PLAYER_TURN);
+                    msg.setPlayerNumber(2);
+                    return msg;
+                }),
+                new Sample("CardSelection", () -> new CardSelection(1, 2, 3, 4, 1)),
+                new Sample("TURN_RESULT", () -> {
+                    TurnResult result = new TurnResult(new CardSelection(1, 2, 3, 4, 1), true, new int[] {3, 2}, 1, false);
+                    result.setValues(5, 5);
+                    return new GameMessage(GameMessage.MessageType.TURN_RESULT, result);
+                }),
+                new Sample("GAME_END", () -> new GameMessage(GameMessage.MessageType.GAME_END, "שחקן 1 ניצח!")),
+        };
+
+        System.out.printf("%-16s %10s %10s %12s %12s %12s %12s%n",
+                "message", "java", "binary", "java enc ns", "java dec ns", "bin enc ns", "bin dec ns");
+        for (Sample sample : samples) {
+            Object[] messages = new Object[count];
+            for (int i = 0; i < count; i++) {
+                messages[i] = sample.factory.get();
+            }
+
+            int java = javaSize(messages[0]);
+            int binary = BinaryProtocol.encode(messages[0]).length;
+
+            double javaEncode = Double.MAX_VALUE, javaDecode = Double.MAX_VALUE;
+            double binaryEncode = Double.MAX_VALUE, binaryDecode = Double.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                byte[] javaStream = javaEncode(messages);
+                javaEncode = Math.min(javaEncode, (System.nanoTime() - start) / (double) count);
+
+                start = System.nanoTime();
+                javaDecode(javaStream, count);
+                javaDecode = Math.min(javaDecode, (System.nanoTime() - start) / (double) count);
+
+                start = System.nanoTime();
+                byte[][] frames = new byte[count][];
+                for (int i = 0; i < count; i++) {
+                    frames[i] = BinaryProtocol.encode(messages[i]);
+                }
+                binaryEncode = Math.min(binaryEncode, (System.nanoTime() - start) / (double) count);
+
+                start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    BinaryProtocol.decode(frames[i], 0, frames[i].length);
+                }
+                binaryDecode = Math.min(binaryDecode, (System.nanoTime() - start) / (double) count);
+            }
+
+            System.out.printf("%-16s %10d %10d %12.0f %12.0f %12.0f %12.0f%n",
+                    sample.name, java, binary, javaEncode, javaDecode, binaryEncode, binaryDecode);
+        }
+    }
+
+    /** Returns the bytes one message takes on an object stream that is reset after every message. */
+    private static int javaSize(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.reset();
+        out.flush();
+        int first = bytes.size();
+        out.writeObject(message);
+        out.reset();
+        out.flush();
+        return bytes.size() - first;
+    }
+
+    private static byte[] javaEncode(Object[] messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (Object message : messages) {
+            out.writeObject(message);
+            out.reset();
+            out.flush();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void javaDecode(byte[] stream, int count) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stream));
+        for (int i = 0; i < count; i++) {
+            in.readObject();
+        }
+    }
+}
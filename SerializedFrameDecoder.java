@@ -0,0 +1,394 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Splits a Java serialization stream into complete top-level objects without blocking.
+ * <p>
+ * ObjectInputStream cannot be fed partial data, so the event loop buffers incoming bytes here
+ * and only hands complete objects to {@link ObjectInputStream#readObject()}. The scanner walks the
+ * stream grammar just far enough to find where an object ends: new and referenced class descriptors,
+ * objects, strings, enums, arrays, block data and resets. Proxy classes are not supported.
+ * <p>
+ * The bytes come from clients nobody has checked yet, so sizes are checked before they are trusted:
+ * an object may not be larger than {@link BinaryProtocol#MAX_FRAME_LENGTH} or nest deeper than
+ * {@link #MAX_DEPTH}, and ObjectInputStream only creates the classes of {@link MessageStream#GAME_CLASSES}.
+ */
+public class SerializedFrameDecoder implements FrameDecoder {
+    private static final int BASE_HANDLE = 0x7e0000;
+    private static final Object NOT_A_CLASS = new Object();
+    /** Deepest nesting of objects the scanner follows; game messages need a handful of levels. */
+    static final int MAX_DEPTH = 16;
+
+    private byte[] pending = new byte[256];
+    private int pendingLength;
+    private boolean headerRead;
+
+    // Handle number -> ClassLayout for class descriptors, NOT_A_CLASS for every other handle
+    private final Map<Integer, Object> handles = new HashMap<>();
+    private int nextHandle = BASE_HANDLE;
+    private int pos;    // scan position while looking for the end of an object
+    private int depth;  // nesting of scanObject calls at pos
+    private int lastFrameLength;
+
+    private final FeedInputStream feed = new FeedInputStream();
+    private ObjectInputStream objectInput;
+
+    /** What the scanner needs to know about a serializable class to skip its instances. */
+    private static final class ClassLayout {
+        final String name;
+        final byte flags;
+        final char[] fieldTypes;
+        ClassLayout superLayout;
+
+        ClassLayout(String name, byte flags, char[] fieldTypes) {
+            this.name = name;
+            this.flags = flags;
+            this.fieldTypes = fieldTypes;
+        }
+    }
+
+    /** Thrown internally when the buffered bytes end in the middle of an object. */
+    private static final class Incomplete extends Exception {
+        private static final long serialVersionUID = 1L;
+        private static final Incomplete INSTANCE = new Incomplete();
+        private Incomplete() { super(null, null, false, false); }
+    }
+
+    /** Appends bytes received from the channel. */
+    @Override
+    public void append(byte[] data, int offset, int length) {
+        if (pendingLength + length > pending.length) {
+            byte[] bigger = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, bigger, 0, pendingLength);
+            pending = bigger;
+        }
+        System.arraycopy(data, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    /**
+     * Returns the next complete object, or null if more bytes are needed.
+     * Throws an IOException when the stream contains something the scanner does not support.
+     */
+    @Override
+    public Object next() throws IOException, ClassNotFoundException {
+        while (true) {
+            if (!headerRead) {
+                if (pendingLength < 4) return null;
+                if ((short) readShort(0) != ObjectStreamConstants.STREAM_MAGIC
+                        || (short) readShort(2) != ObjectStreamConstants.STREAM_VERSION) {
+                    throw new StreamCorruptedException("invalid stream header");
+                }
+                consume(4);
+                headerRead = true;
+                feed.add(new byte[] {(byte) 0xac, (byte) 0xed, 0x00, 0x05}, 0, 4);
+                objectInput = new ObjectInputStream(feed);
+                objectInput.setObjectInputFilter(MessageStream.GAME_CLASSES);
+            }
+            if (pendingLength == 0) return null;
+
+            boolean reset = pending[0] == ObjectStreamConstants.TC_RESET;
+            int handlesBefore = nextHandle;
+            try {
+                pos = 0;
+                depth = 0;
+                if (reset) {
+                    pos = 1;
+                    handles.clear();
+                    nextHandle = BASE_HANDLE;
+                } else {
+                    scanObject();
+                    require(pos);
+                }
+            } catch (Incomplete e) {
+                // Roll back handles assigned while scanning the partial object
+                for (int handle = handlesBefore; handle < nextHandle; handle++) {
+                    handles.remove(handle);
+                }
+                nextHandle = handlesBefore;
+                if (pendingLength > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new StreamCorruptedException("object larger than " + BinaryProtocol.MAX_FRAME_LENGTH + " bytes");
+                }
+                return null;
+            }
+
+            feed.add(pending, 0, pos);
+            consume(pos);
+            lastFrameLength = pos;
+            if (reset) {
+                // The reset marker is consumed by ObjectInputStream together with the next object
+                continue;
+            }
+            return objectInput.readObject();
+        }
+    }
+
+    /** Returns how many bytes the last object took, not counting a reset marker before it. */
+    @Override
+    public int lastFrameLength() {
+        return lastFrameLength;
+    }
+
+    /** Skips one object of any kind. */
+    private void scanObject() throws IOException, Incomplete {
+        if (++depth > MAX_DEPTH) throw new StreamCorruptedException("objects nested too deep");
+        try {
+            scanElement();
+        } finally {
+            depth--;
+        }
+    }
+
+    private void scanElement() throws IOException, Incomplete {
+        byte tc = byteAt(pos++);
+        switch (tc) {
+            case ObjectStreamConstants.TC_NULL:
+                return;
+            case ObjectStreamConstants.TC_REFERENCE:
+                intAt(pos);
+                pos += 4;
+                return;
+            case ObjectStreamConstants.TC_STRING:
+                nextHandle++;
+                skip(2 + shortAt(pos));
+                return;
+            case ObjectStreamConstants.TC_LONGSTRING:
+                nextHandle++;
+                long length = ((long) intAt(pos) << 32) | (intAt(pos + 4) & 0xffffffffL);
+                if (length < 0) throw new StreamCorruptedException("negative string length");
+                skip(8 + length);
+                return;
+            case ObjectStreamConstants.TC_CLASSDESC:
+                pos--;
+                scanClassDesc();
+                return;
+            case ObjectStreamConstants.TC_CLASS:
+                scanClassDesc();
+                assignHandle();
+                return;
+            case ObjectStreamConstants.TC_ENUM:
+                scanClassDesc();
+                assignHandle();
+                scanObject(); // constant name
+                return;
+            case ObjectStreamConstants.TC_ARRAY:
+                scanArray();
+                return;
+            case ObjectStreamConstants.TC_OBJECT: {
+                ClassLayout layout = scanClassDesc();
+                if (layout == null) throw new StreamCorruptedException("object without class descriptor");
+                assignHandle();
+                scanClassData(layout);
+                return;
+            }
+            default:
+                throw new StreamCorruptedException("unsupported stream element: " + tc);
+        }
+    }
+
+    /** Skips TC_ARRAY classDesc newHandle size values. */
+    private void scanArray() throws IOException, Incomplete {
+        ClassLayout layout = scanClassDesc();
+        if (layout == null || layout.name.length() < 2 || layout.name.charAt(0) != '[') {
+            throw new StreamCorruptedException("invalid array class");
+        }
+        assignHandle();
+        int size = intAt(pos);
+        pos += 4;
+        if (size < 0) throw new StreamCorruptedException("negative array size");
+        char elementType = layout.name.charAt(1);
+        if (elementType == 'L' || elementType == '[') {
+            for (int i = 0; i < size; i++) {
+                scanObject();
+            }
+        } else {
+            skip((long) size * primitiveSize(elementType));
+            require(pos);
+        }
+    }
+
+    /** Skips the field values of an object, superclass first. */
+    private void scanClassData(ClassLayout layout) throws IOException, Incomplete {
+        if (layout.superLayout != null) {
+            scanClassData(layout.superLayout);
+        }
+        if ((layout.flags & ObjectStreamConstants.SC_EXTERNALIZABLE) != 0) {
+            if ((layout.flags & ObjectStreamConstants.SC_BLOCK_DATA) == 0) {
+                throw new StreamCorruptedException("old externalizable format is not supported");
+            }
+            skipAnnotation();
+            return;
+        }
+        for (char type : layout.fieldTypes) {
+            if (type == 'L' || type == '[') {
+                scanObject();
+            } else {
+                pos += primitiveSize(type);
+            }
+        }
+        if ((layout.flags & ObjectStreamConstants.SC_WRITE_METHOD) != 0) {
+            skipAnnotation();
+        }
+    }
+
+    /** Skips a class descriptor (new, reference or null) and returns its layout, or null for TC_NULL. */
+    private ClassLayout scanClassDesc() throws IOException, Incomplete {
+        byte tc = byteAt(pos++);
+        if (tc == ObjectStreamConstants.TC_NULL) {
+            return null;
+        }
+        if (tc == ObjectStreamConstants.TC_REFERENCE) {
+            int handle = intAt(pos);
+            pos += 4;
+            Object layout = handles.get(handle);
+            if (!(layout instanceof ClassLayout)) {
+                throw new StreamCorruptedException("invalid class descriptor handle: " + handle);
+            }
+            return (ClassLayout) layout;
+        }
+        if (tc != ObjectStreamConstants.TC_CLASSDESC) {
+            throw new StreamCorruptedException("unsupported class descriptor: " + tc);
+        }
+
+        int nameLength = shortAt(pos);
+        require(pos + 2 + nameLength);
+        String name = new String(pending, pos + 2, nameLength, StandardCharsets.UTF_8);
+        skip(2 + nameLength + 8);  // class name and serialVersionUID
+        int handle = nextHandle++;
+        byte flags = byteAt(pos++);
+
+        int fieldCount = shortAt(pos);
+        pos += 2;
+        char[] fieldTypes = new char[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fieldTypes[i] = (char) byteAt(pos++);
+            skip(2 + shortAt(pos));     // field name
+            if (fieldTypes[i] == 'L' || fieldTypes[i] == '[') {
+                scanObject();           // field type name
+            }
+        }
+        ClassLayout layout = new ClassLayout(name, flags, fieldTypes);
+        handles.put(handle, layout);
+
+        skipAnnotation();
+        layout.superLayout = scanClassDesc();
+        return layout;
+    }
+
+    /** Skips block data and objects up to and including TC_ENDBLOCKDATA. */
+    private void skipAnnotation() throws IOException, Incomplete {
+        while (true) {
+            byte tc = byteAt(pos);
+            if (tc == ObjectStreamConstants.TC_ENDBLOCKDATA) {
+                pos++;
+                return;
+            } else if (tc == ObjectStreamConstants.TC_BLOCKDATA) {
+                skip(2 + (byteAt(pos + 1) & 0xff));
+            } else if (tc == ObjectStreamConstants.TC_BLOCKDATALONG) {
+                int length = intAt(pos + 1);
+                if (length < 0) throw new StreamCorruptedException("negative block length");
+                skip(5L + length);
+            } else {
+                scanObject();
+            }
+        }
+    }
+
+    private void assignHandle() {
+        handles.put(nextHandle++, NOT_A_CLASS);
+    }
+
+    /** Returns the size of a primitive value, or fails for unknown type codes. */
+    private static int primitiveSize(char typeCode) throws StreamCorruptedException {
+        switch (typeCode) {
+            case 'B': case 'Z': return 1;
+            case 'C': case 'S': return 2;
+            case 'I': case 'F': return 4;
+            case 'J': case 'D': return 8;
+            default: throw new StreamCorruptedException("invalid type code: " + typeCode);
+        }
+    }
+
+    /**
+     * Moves the scan position past count bytes. The sum is taken in long, so a huge size from the stream
+     * fails here instead of wrapping around to a position inside the buffer.
+     */
+    private void skip(long count) throws StreamCorruptedException {
+        long end = pos + count;
+        if (count < 0 || end > BinaryProtocol.MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("object larger than " + BinaryProtocol.MAX_FRAME_LENGTH + " bytes");
+        }
+        pos = (int) end;
+    }
+
+    private void require(int end) throws Incomplete {
+        if (end > pendingLength) throw Incomplete.INSTANCE;
+    }
+
+    private byte byteAt(int at) throws Incomplete {
+        require(at + 1);
+        return pending[at];
+    }
+
+    private int shortAt(int at) throws Incomplete {
+        require(at + 2);
+        return readShort(at);
+    }
+
+    private int intAt(int at) throws Incomplete {
+        require(at + 4);
+        return (readShort(at) << 16) | readShort(at + 2);
+    }
+
+    private int readShort(int at) {
+        return ((pending[at] & 0xff) << 8) | (pending[at + 1] & 0xff);
+    }
+
+    private void consume(int count) {
+        System.arraycopy(pending, count, pending, 0, pendingLength - count);
+        pendingLength -= count;
+    }
+
+    /** An input stream that only ever returns bytes that were already added to it. */
+    private static final class FeedInputStream extends InputStream {
+        private byte[] buffer = new byte[256];
+        private int start;
+        private int end;
+
+        void add(byte[] data, int offset, int length) {
+            if (end + length > buffer.length) {
+                int used = end - start;
+                byte[] target = (used + length > buffer.length) ? new byte[Math.max(buffer.length * 2, used + length)] : buffer;
+                System.arraycopy(buffer, start, target, 0, used);
+                buffer = target;
+                start = 0;
+                end = used;
+            }
+            System.arraycopy(data, offset, buffer, end, length);
+            end += length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (start == end) throw new EOFException("no complete object buffered");
+            return buffer[start++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (start == end) throw new EOFException("no complete object buffered");
+            int count = Math.min(len, end - start);
+            System.arraycopy(buffer, start, b, off, count);
+            start += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return end - start;
+        }
+    }
+}
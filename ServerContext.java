@@ -0,0 +1,185 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-wide services shared by every GameSession: the threads sessions run on,
+ * a common scheduler, a few counters used for reporting and the {@link ServerMetrics}.
+ * Timed game steps (such as hiding mismatched cards) are scheduled here,
+ * so a waiting session costs a timer entry instead of a parked thread.
+ * The timer thread only hands a due step to a session worker: the step writes to sockets,
+ * and one slow client must not hold up the timers of every other game.
+ */
+public class ServerContext {
+    private final MemoryGameServer.Mode mode;
+    private final ThreadFactory sessionThreads;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService sessionWorkers;
+    private final ExecutorService spectatorWriters;
+    private long revealDelayMillis = 2000;
+    private boolean hiddenBoard;
+    private long resumeGraceMillis = 30_000;
+    private int playersPerGame = GameSession.MIN_PLAYERS;
+    private final SessionRegistry sessionRegistry = new SessionRegistry();
+    // 256 small buffers, 4 of the 64 KB class: about 2 MB free at most
+    private final BufferPool bufferPool = new BufferPool(256, 256 * 1024);
+    private GameJournal journal;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicInteger totalSessions = new AtomicInteger();
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    /** Creates the context for a server mode. Player reader threads come from the given factory. */
+    public ServerContext(MemoryGameServer.Mode mode, ThreadFactory sessionThreads) {
+        this.mode = mode;
+        this.sessionThreads = sessionThreads;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, ServerThreads.platform("server-scheduler"));
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+        this.sessionWorkers = mode == MemoryGameServer.Mode.VIRTUAL
+                ? ServerThreads.threadPerTask(sessionThreads)
+                : Executors.newCachedThreadPool(ServerThreads.platform("session-worker"));
+        this.spectatorWriters = mode == MemoryGameServer.Mode.VIRTUAL
+                ? ServerThreads.threadPerTask(sessionThreads)
+                : Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                        ServerThreads.platform("spectator-writer"));
+        metrics.setSessionGauges(activeSessions::get, totalSessions::get);
+        metrics.setBufferPoolCounters(bufferPool::getAllocated, bufferPool::getReused);
+    }
+
+    /** Returns the mode the server runs in. */
+    public MemoryGameServer.Mode getMode() {
+        return mode;
+    }
+
+    /** Returns the factory used for per-player reader threads. */
+    public ThreadFactory getSessionThreads() {
+        return sessionThreads;
+    }
+
+    /** Returns the shared scheduler for timed server tasks that do not write to players. */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Runs a session task on a session worker after the delay. The scheduler thread only hands it over,
+     * so the task may block on a player's socket. Cancelling the returned future stops a task that is not due yet.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return scheduler.schedule(() -> execute(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Runs a session task on a session worker now, outside the caller's thread and locks. */
+    public void execute(Runnable task) {
+        sessionWorkers.execute(task);
+    }
+
+    /**
+     * Returns the executor that writes to spectators, so these writes never run on a session's or an event loop's thread.
+     * A writer blocked on a stuck spectator is freed when the spectator falls far enough behind to be dropped.
+     */
+    public ExecutorService getSpectatorWriters() {
+        return spectatorWriters;
+    }
+
+    /** Returns how long mismatched cards stay visible before they are hidden again. */
+    public long getRevealDelayMillis() {
+        return revealDelayMillis;
+    }
+
+    /** Sets how long mismatched cards stay visible before they are hidden again. */
+    public void setRevealDelayMillis(long revealDelayMillis) {
+        this.revealDelayMillis = revealDelayMillis;
+    }
+
+    /** Returns true if card values stay on the server until a card is revealed. */
+    public boolean isHiddenBoard() {
+        return hiddenBoard;
+    }
+
+    /** Sets whether card values stay on the server until a card is revealed. */
+    public void setHiddenBoard(boolean hiddenBoard) {
+        this.hiddenBoard = hiddenBoard;
+    }
+
+    /** Returns how long a session waits for a disconnected player to resume; 0 ends the game at once. */
+    public long getResumeGraceMillis() {
+        return resumeGraceMillis;
+    }
+
+    /** Sets how long a session waits for a disconnected player to resume; 0 ends the game at once. */
+    public void setResumeGraceMillis(long resumeGraceMillis) {
+        this.resumeGraceMillis = resumeGraceMillis;
+    }
+
+    /** Returns how many players the matchmaker puts in one game. */
+    public int getPlayersPerGame() {
+        return playersPerGame;
+    }
+
+    /** Sets how many players the matchmaker puts in one game. */
+    public void setPlayersPerGame(int playersPerGame) {
+        this.playersPerGame = playersPerGame;
+    }
+
+    /** Returns the resume tokens of running sessions. */
+    public SessionRegistry getSessionRegistry() {
+        return sessionRegistry;
+    }
+
+    /** Returns the pool that broadcast messages are encoded into. */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /** Returns the journal that games are recorded in, or null if the server keeps none. */
+    public GameJournal getJournal() {
+        return journal;
+    }
+
+    /** Sets the journal that games are recorded in; null keeps no journal. */
+    public void setJournal(GameJournal journal) {
+        this.journal = journal;
+        if (journal != null) {
+            metrics.setJournalCounters(journal::getWritten, journal::getDropped, journal::getFsyncs);
+        }
+    }
+
+    /** Called when a session starts its game. Returns the session's number; sessions are numbered from 1 in start order. */
+    public int sessionStarted() {
+        activeSessions.incrementAndGet();
+        return totalSessions.incrementAndGet();
+    }
+
+    /** Called once when a session closed its connections. */
+    public void sessionEnded() {
+        activeSessions.decrementAndGet();
+    }
+
+    /** Returns the number of sessions currently running. */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /** Returns the number of sessions started since the server came up. */
+    public int getTotalSessions() {
+        return totalSessions.get();
+    }
+
+    /** Returns the metrics recorded by sessions and connections. */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Stops the shared scheduler, the session workers and the spectator writers. */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        sessionWorkers.shutdownNow();
+        spectatorWriters.shutdownNow();
+    }
+}
@@ -0,0 +1,381 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters, gauges and latency histograms for a running server.
+ * <p>
+ * Recording is a few atomic increments with no locks and no allocation, so metrics are always on.
+ * They are read through {@link MetricsEndpoint} in Prometheus text format or through JMX.
+ * Bytes and messages are counted per message type; a bare CardSelection counts as CARD_SELECTION.
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+    private static final GameMessage.MessageType[] TYPES = GameMessage.MessageType.values();
+    private static final String OBJECT_NAME = "memorygame:type=ServerMetrics";
+
+    private final AtomicLongArray messagesIn = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray bytesIn = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray messagesOut = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray bytesOut = new AtomicLongArray(TYPES.length);
+    private final AtomicLong turns = new AtomicLong();
+    private final AtomicLong evictedClosed = new AtomicLong();
+    private final AtomicLong evictedUnresponsive = new AtomicLong();
+    private final AtomicLong resumesAccepted = new AtomicLong();
+    private final AtomicLong resumesRejected = new AtomicLong();
+    private final AtomicLong resumesExpired = new AtomicLong();
+    private final AtomicInteger spectators = new AtomicInteger();
+    private final AtomicLong spectatorResyncs = new AtomicLong();
+    private final AtomicLong spectatorsDropped = new AtomicLong();
+    private final LatencyHistogram turnLatency = new LatencyHistogram();    // microseconds
+    private final LatencyHistogram queueWait = new LatencyHistogram();      // microseconds
+    private final LatencyHistogram playerRtt = new LatencyHistogram();      // microseconds
+    private final LatencyHistogram[] serializeTime = {new LatencyHistogram(), new LatencyHistogram()}; // nanoseconds, per format
+
+    private volatile IntSupplier activeSessions = () -> 0;
+    private volatile IntSupplier totalSessions = () -> 0;
+    private volatile IntSupplier waitingClients = () -> 0;
+    private volatile LongSupplier buffersAllocated = () -> 0;
+    private volatile LongSupplier buffersReused = () -> 0;
+    private volatile LongSupplier journalWritten = () -> 0;
+    private volatile LongSupplier journalDropped = () -> 0;
+    private volatile LongSupplier journalFsyncs = () -> 0;
+
+    // Last sample used for getTurnsPerSecond
+    private long rateTurns;
+    private long rateNanos = System.nanoTime();
+    private double lastRate;
+
+    /** Sets where the session gauges are read from. */
+    public void setSessionGauges(IntSupplier activeSessions, IntSupplier totalSessions) {
+        this.activeSessions = activeSessions;
+        this.totalSessions = totalSessions;
+    }
+
+    /** Sets where the number of players waiting for an opponent is read from. */
+    public void setWaitingClients(IntSupplier waitingClients) {
+        this.waitingClients = waitingClients;
+    }
+
+    /** Sets where the counts of the broadcast buffer pool are read from. */
+    public void setBufferPoolCounters(LongSupplier allocated, LongSupplier reused) {
+        this.buffersAllocated = allocated;
+        this.buffersReused = reused;
+    }
+
+    /** Sets where the counts of the game journal are read from. */
+    public void setJournalCounters(LongSupplier written, LongSupplier dropped, LongSupplier fsyncs) {
+        this.journalWritten = written;
+        this.journalDropped = dropped;
+        this.journalFsyncs = fsyncs;
+    }
+
+    /** Records one message written to a player and how long encoding it took. */
+    public void messageSent(Object message, MessageStream.Format format, int bytes, long serializeNanos) {
+        messageWritten(message, bytes);
+        messageEncoded(format, serializeNanos);
+    }
+
+    /** Records one message written to a player whose bytes were encoded earlier, for a broadcast. */
+    public void messageWritten(Object message, int bytes) {
+        int type = typeOf(message);
+        if (type >= 0) {
+            messagesOut.incrementAndGet(type);
+            bytesOut.addAndGet(type, bytes);
+        }
+    }
+
+    /** Records how long encoding one message took. A broadcast is encoded once for all its recipients. */
+    public void messageEncoded(MessageStream.Format format, long serializeNanos) {
+        serializeTime[format.ordinal()].record(serializeNanos);
+    }
+
+    /** Records one message read from a player. */
+    public void messageReceived(Object message, int bytes) {
+        int type = typeOf(message);
+        if (type >= 0) {
+            messagesIn.incrementAndGet(type);
+            bytesIn.addAndGet(type, bytes);
+        }
+    }
+
+    /** Records a processed card selection and how long the session took to handle it. */
+    public void turnCompleted(long micros) {
+        turns.incrementAndGet();
+        turnLatency.record(micros);
+    }
+
+    /** Records how long a player waited in the matchmaker before being paired. */
+    public void queueWaitRecorded(long micros) {
+        queueWait.record(micros);
+    }
+
+    /** Records a waiting player that was dropped: closed while queued, or did not answer the liveness PING. */
+    public void playerEvicted(boolean unresponsive) {
+        (unresponsive ? evictedUnresponsive : evictedClosed).incrementAndGet();
+    }
+
+    /** Records a RESUME_REQUEST that gave a player its seat back, or one whose token was unknown or expired. */
+    public void resumeAttempted(boolean accepted) {
+        (accepted ? resumesAccepted : resumesRejected).incrementAndGet();
+    }
+
+    /** Records a game that ended because a disconnected player did not return within the grace period. */
+    public void resumeExpired() {
+        resumesExpired.incrementAndGet();
+    }
+
+    /** Records a spectator that started watching a game. */
+    public void spectatorJoined() {
+        spectators.incrementAndGet();
+    }
+
+    /** Records a spectator that stopped watching; dropped is true if it was too slow to keep up. */
+    public void spectatorLeft(boolean dropped) {
+        spectators.decrementAndGet();
+        if (dropped) spectatorsDropped.incrementAndGet();
+    }
+
+    /** Records a slow spectator whose backlog was replaced with a fresh snapshot. */
+    public void spectatorResynced() {
+        spectatorResyncs.incrementAndGet();
+    }
+
+    /** Records the round-trip time measured for a new player. */
+    public void rttMeasured(long micros) {
+        playerRtt.record(micros);
+    }
+
+    /** Returns the histogram of card selection handling times in microseconds. */
+    public LatencyHistogram getTurnLatency() {
+        return turnLatency;
+    }
+
+    /** Registers this object with the platform MBean server. Errors are printed, not thrown. */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Removes this object from the platform MBean server if it is registered. */
+    public void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public int getActiveSessions() { return activeSessions.getAsInt(); }
+
+    @Override
+    public int getTotalSessions() { return totalSessions.getAsInt(); }
+
+    @Override
+    public int getWaitingClients() { return waitingClients.getAsInt(); }
+
+    @Override
+    public long getTurns() { return turns.get(); }
+
+    /** Returns turns per second since the previous call, recomputed at most once a second. */
+    @Override
+    public synchronized double getTurnsPerSecond() {
+        long now = System.nanoTime();
+        if (now - rateNanos >= 1_000_000_000L) {
+            long current = turns.get();
+            lastRate = (current - rateTurns) * 1e9 / (now - rateNanos);
+            rateTurns = current;
+            rateNanos = now;
+        }
+        return lastRate;
+    }
+
+    @Override
+    public long getTurnLatencyP50Micros() { return turnLatency.getValueAtPercentile(50); }
+
+    @Override
+    public long getTurnLatencyP99Micros() { return turnLatency.getValueAtPercentile(99); }
+
+    @Override
+    public long getTurnLatencyP999Micros() { return turnLatency.getValueAtPercentile(99.9); }
+
+    @Override
+    public long getTurnLatencyMaxMicros() { return turnLatency.getMax(); }
+
+    @Override
+    public long getQueueWaitP50Micros() { return queueWait.getValueAtPercentile(50); }
+
+    @Override
+    public long getQueueWaitP99Micros() { return queueWait.getValueAtPercentile(99); }
+
+    @Override
+    public long getEvictedPlayers() { return evictedClosed.get() + evictedUnresponsive.get(); }
+
+    @Override
+    public long getResumedPlayers() { return resumesAccepted.get(); }
+
+    @Override
+    public long getExpiredResumes() { return resumesExpired.get(); }
+
+    @Override
+    public int getSpectators() { return spectators.get(); }
+
+    @Override
+    public long getDroppedSpectators() { return spectatorsDropped.get(); }
+
+    @Override
+    public long getMessagesIn() { return sum(messagesIn); }
+
+    @Override
+    public long getMessagesOut() { return sum(messagesOut); }
+
+    @Override
+    public long getBytesIn() { return sum(bytesIn); }
+
+    @Override
+    public long getBytesOut() { return sum(bytesOut); }
+
+    @Override
+    public long getSerializeJavaP99Nanos() {
+        return serializeTime[MessageStream.Format.JAVA.ordinal()].getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getSerializeBinaryP99Nanos() {
+        return serializeTime[MessageStream.Format.BINARY.ordinal()].getValueAtPercentile(99);
+    }
+
+    /** Returns all metrics in the Prometheus text exposition format. */
+    @Override
+    public String getPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        gauge(out, "memorygame_active_sessions", "Sessions currently running", getActiveSessions());
+        gauge(out, "memorygame_waiting_clients", "Players waiting for an opponent", getWaitingClients());
+        counter(out, "memorygame_sessions_total", "Sessions started since the server came up", getTotalSessions());
+        counter(out, "memorygame_turns_total", "Card selections processed", getTurns());
+
+        header(out, "memorygame_turn_latency_seconds", "Time to process a card selection", "summary");
+        summary(out, "memorygame_turn_latency_seconds", "", turnLatency, 1e-6);
+
+        header(out, "memorygame_evicted_players_total", "Waiting players dropped before their game started", "counter");
+        out.append("memorygame_evicted_players_total{reason=\"closed\"} ").append(evictedClosed.get()).append('\n');
+        out.append("memorygame_evicted_players_total{reason=\"unresponsive\"} ").append(evictedUnresponsive.get()).append('\n');
+
+        header(out, "memorygame_resumes_total", "Reconnect attempts and games lost to a player that did not return", "counter");
+        out.append("memorygame_resumes_total{result=\"accepted\"} ").append(resumesAccepted.get()).append('\n');
+        out.append("memorygame_resumes_total{result=\"rejected\"} ").append(resumesRejected.get()).append('\n');
+        out.append("memorygame_resumes_total{result=\"expired\"} ").append(resumesExpired.get()).append('\n');
+
+        gauge(out, "memorygame_spectators", "Spectators currently watching a game", getSpectators());
+        counter(out, "memorygame_spectator_resyncs_total", "Slow spectators sent a fresh snapshot instead of their backlog", spectatorResyncs.get());
+        counter(out, "memorygame_spectators_dropped_total", "Spectators dropped because they could not keep up", getDroppedSpectators());
+
+        header(out, "memorygame_queue_wait_seconds", "Time a player waited for an opponent", "summary");
+        summary(out, "memorygame_queue_wait_seconds", "", queueWait, 1e-6);
+
+        header(out, "memorygame_player_rtt_seconds", "Round-trip time measured when a player joins", "summary");
+        summary(out, "memorygame_player_rtt_seconds", "", playerRtt, 1e-6);
+
+        header(out, "memorygame_serialize_seconds", "Time to encode one outgoing message", "summary");
+        for (MessageStream.Format format : MessageStream.Format.values()) {
+            summary(out, "memorygame_serialize_seconds", "format=\"" + format.name().toLowerCase() + "\"",
+                    serializeTime[format.ordinal()], 1e-9);
+        }
+
+        header(out, "memorygame_broadcast_buffers_total", "Pooled buffers that broadcasts were encoded into", "counter");
+        out.append("memorygame_broadcast_buffers_total{result=\"allocated\"} ").append(buffersAllocated.getAsLong()).append('\n');
+        out.append("memorygame_broadcast_buffers_total{result=\"reused\"} ").append(buffersReused.getAsLong()).append('\n');
+
+        header(out, "memorygame_journal_records_total", "Game journal records written to a segment or dropped because the writer fell behind", "counter");
+        out.append("memorygame_journal_records_total{result=\"written\"} ").append(journalWritten.getAsLong()).append('\n');
+        out.append("memorygame_journal_records_total{result=\"dropped\"} ").append(journalDropped.getAsLong()).append('\n');
+        counter(out, "memorygame_journal_fsyncs_total", "Times a game journal segment was forced to disk", journalFsyncs.getAsLong());
+
+        header(out, "memorygame_messages_total", "Messages by direction and type", "counter");
+        perType(out, "memorygame_messages_total", messagesIn, messagesOut);
+        header(out, "memorygame_bytes_total", "Encoded bytes by direction and message type", "counter");
+        perType(out, "memorygame_bytes_total", bytesIn, bytesOut);
+        return out.toString();
+    }
+
+    private static int typeOf(Object message) {
+        if (message instanceof GameMessage) {
+            GameMessage.MessageType type = ((GameMessage) message).getType();
+            return type == null ? -1 : type.ordinal();
+        }
+        return message instanceof CardSelection ? GameMessage.MessageType.CARD_SELECTION.ordinal() : -1;
+    }
+
+    private static long sum(AtomicLongArray values) {
+        long total = 0;
+        for (int i = 0; i < values.length(); i++) {
+            total += values.get(i);
+        }
+        return total;
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /** Writes quantiles, sum and count of a histogram; scale converts its unit to seconds. */
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram, double scale) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            out.append(name).append("{").append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.getValueAtPercentile(quantile * 100) * scale)).append('\n');
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ')
+                .append(seconds(histogram.getMean() * histogram.getCount() * scale)).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static void perType(StringBuilder out, String name, AtomicLongArray in, AtomicLongArray outbound) {
+        for (GameMessage.MessageType type : TYPES) {
+            String typeName = type.name().toLowerCase();
+            long received = in.get(type.ordinal());
+            long sent = outbound.get(type.ordinal());
+            if (received != 0) {
+                out.append(name).append("{direction=\"in\",type=\"").append(typeName).append("\"} ").append(received).append('\n');
+            }
+            if (sent != 0) {
+                out.append(name).append("{direction=\"out\",type=\"").append(typeName).append("\"} ").append(sent).append('\n');
+            }
+        }
+    }
+
+    private static String seconds(double value) {
+        return String.format(Locale.ROOT, "%.9f", value);
+    }
+}
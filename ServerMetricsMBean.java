@@ -0,0 +1,53 @@
+/**
+ * JMX view of {@link ServerMetrics}, registered as "memorygame:type=ServerMetrics".
+ * Latencies are in microseconds, serialization times in nanoseconds.
+ */
+public interface ServerMetricsMBean {
+
+    int getActiveSessions();
+
+    int getTotalSessions();
+
+    int getWaitingClients();
+
+    long getTurns();
+
+    double getTurnsPerSecond();
+
+    long getTurnLatencyP50Micros();
+
+    long getTurnLatencyP99Micros();
+
+    long getTurnLatencyP999Micros();
+
+    long getTurnLatencyMaxMicros();
+
+    long getQueueWaitP50Micros();
+
+    long getQueueWaitP99Micros();
+
+    long getEvictedPlayers();
+
+    long getResumedPlayers();
+
+    long getExpiredResumes();
+
+    int getSpectators();
+
+    long getDroppedSpectators();
+
+    long getMessagesIn();
+
+    long getMessagesOut();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getSerializeJavaP99Nanos();
+
+    long getSerializeBinaryP99Nanos();
+
+    /** Returns the same text the HTTP endpoint serves. */
+    String getPrometheusText();
+}
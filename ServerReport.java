@@ -0,0 +1,39 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Prints one line with thread and heap usage of the server.
+ * Used to compare the server modes under the same load: virtual threads do not show up
+ * in the live thread count, so a mode that scales on heap instead of OS threads is easy to spot.
+ */
+public class ServerReport implements Runnable {
+    private final ServerContext context;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /** Creates a report for the given server. */
+    public ServerReport(ServerContext context) {
+        this.context = context;
+    }
+
+    /** Prints the current report line. */
+    @Override
+    public void run() {
+        System.out.println(format());
+    }
+
+    /** Returns the report as a single key=value line. */
+    public String format() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        ServerMetrics metrics = context.getMetrics();
+        int sessions = context.getActiveSessions();
+        long heapUsed = heap.getUsed();
+        return String.format(
+                "[report] mode=%s sessions=%d totalSessions=%d threads=%d peakThreads=%d heapUsedMB=%.1f heapPerSessionKB=%.1f"
+                        + " turns=%d turnP99Micros=%d",
+                context.getMode().name().toLowerCase(), sessions, context.getTotalSessions(),
+                threads.getThreadCount(), threads.getPeakThreadCount(),
+                heapUsed / (1024.0 * 1024.0), sessions == 0 ? 0.0 : heapUsed / 1024.0 / sessions,
+                metrics.getTurns(), metrics.getTurnLatencyP99Micros());
+    }
+}
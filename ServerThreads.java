@@ -0,0 +1,66 @@
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the server modes.
+ * Virtual threads are looked up by reflection, so the server still compiles and runs on older JDKs.
+ */
+public final class ServerThreads {
+
+    private ServerThreads() {
+    }
+
+    /** Creates daemon platform threads with a common name prefix. */
+    public static ThreadFactory platform(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** Returns true if this JVM can create virtual threads. */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            virtual("probe");
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates virtual threads with a common name prefix (JDK 21+).
+     * Throws UnsupportedOperationException if the JVM has no virtual threads.
+     */
+    public static ThreadFactory virtual(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            throw new UnsupportedOperationException("virtual threads require JDK 21 or newer", e);
+        } catch (InvocationTargetException e) {
+            throw new UnsupportedOperationException("virtual threads are not enabled: " + e.getCause(), e);
+        }
+    }
+
+    /**
+     * Returns an executor that starts a new thread from the factory for every task.
+     * Virtual threads are cheap to create, so they are never pooled.
+     */
+    public static ExecutorService threadPerTask(ThreadFactory factory) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            // Older JDKs: a cached pool over the same factory behaves the same for our long-lived tasks
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+}
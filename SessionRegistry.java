@@ -0,0 +1,82 @@
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Running sessions by number, and their resume tokens. Every player gets a token with GAME_START;
+ * a player that lost its connection presents the token on a new connection to take its seat back.
+ * Spectators find the game they want to watch by its number.
+ */
+public class SessionRegistry {
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<String, Seat> seats = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, GameSession> sessions = new ConcurrentHashMap<>();
+
+    /** A player's place in a session. */
+    public static final class Seat {
+        private final GameSession session;
+        private final int playerNumber;
+
+        Seat(GameSession session, int playerNumber) {
+            this.session = session;
+            this.playerNumber = playerNumber;
+        }
+
+        public GameSession getSession() { return session; }
+
+        public int getPlayerNumber() { return playerNumber; }
+    }
+
+    /** Creates a new unguessable token for a player of the session. */
+    public String register(GameSession session, int playerNumber) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(32);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        String value = token.toString();
+        seats.put(value, new Seat(session, playerNumber));
+        return value;
+    }
+
+    /** Returns the seat of a token, or null if the token is unknown or its session ended. */
+    public Seat find(String token) {
+        return token == null ? null : seats.get(token);
+    }
+
+    /** Forgets a token. */
+    public void remove(String token) {
+        if (token != null) {
+            seats.remove(token);
+        }
+    }
+
+    /** Adds a session that started its game. */
+    public void addSession(GameSession session) {
+        sessions.put(session.getId(), session);
+    }
+
+    /** Removes a session that closed. */
+    public void removeSession(GameSession session) {
+        sessions.remove(session.getId(), session);
+    }
+
+    /** Returns the running session with the given number, or the newest running session if the number is null. */
+    public GameSession findSession(Integer id) {
+        if (id != null) {
+            return sessions.get(id);
+        }
+        GameSession newest = null;
+        for (GameSession session : sessions.values()) {
+            if (newest == null || session.getId() > newest.getId()) {
+                newest = session;
+            }
+        }
+        return newest;
+    }
+
+    /** Returns the number of tokens that can still be used. */
+    public int size() {
+        return seats.size();
+    }
+}
@@ -0,0 +1,89 @@
+import java.io.*;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/** A blocking player connection over a socket, in whichever wire format the client chose. */
+public class SocketPlayerConnection implements PlayerConnection {
+    private final Socket socket;
+    private MessageStream stream;
+
+    /** Performs the handshake on the socket and opens the message stream, recording its traffic in the given metrics. */
+    public SocketPlayerConnection(Socket socket, ServerMetrics metrics) throws IOException {
+        this.socket = socket;
+        this.stream = MessageStream.accept(socket);
+        this.stream.setMetrics(metrics);
+    }
+
+    /** Writes the message and flushes it to the player. */
+    @Override
+    public void send(GameMessage message) throws IOException {
+        stream.write(message);
+    }
+
+    /** Writes the bytes the message was encoded to for all players. */
+    @Override
+    public void send(OutboundMessage message) throws IOException {
+        stream.write(message);
+    }
+
+    /** Reads the next object sent by the player. */
+    @Override
+    public Object receive() throws IOException, ClassNotFoundException {
+        return stream.read();
+    }
+
+    /**
+     * Makes {@link #receive()} give up after the given time with a SocketTimeoutException (0 waits forever).
+     * Used while the player is probed before a game, when a silent client must not hold a thread.
+     */
+    public void setReadTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    /** Sends a PING and reads until its PONG arrives, giving up after the timeout. */
+    @Override
+    public boolean ping(long timeoutMillis) {
+        try {
+            setReadTimeout((int) timeoutMillis);
+            Long sent = System.nanoTime();
+            send(new GameMessage(GameMessage.MessageType.PING, (Object) sent));
+            while (true) {
+                Object obj = receive();
+                // A late answer to an earlier PING carries a different timestamp
+                if (obj instanceof GameMessage && ((GameMessage) obj).getType() == GameMessage.MessageType.PONG
+                        && sent.equals(((GameMessage) obj).getData())) {
+                    break;
+                }
+                if (System.nanoTime() - sent > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+                    return false;
+                }
+            }
+            setReadTimeout(0);
+            return true;
+        } catch (IOException | ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /** Waits up to the timeout for the player to close its end of the socket, without reading its messages. */
+    @Override
+    public boolean isConnected(long timeoutMillis) {
+        return isOpen() && !stream.isPeerClosed((int) timeoutMillis);
+    }
+
+    /** Returns false once the socket was closed. */
+    @Override
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    /** Closes the streams and the socket. */
+    @Override
+    public void close() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
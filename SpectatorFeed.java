@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * The read-only watchers of one GameSession. Every message the session broadcasts to its players is
+ * handed to each spectator's own bounded queue, and the queues are written on the spectator writers,
+ * so a slow or stuck spectator never holds up the game.
+ * <p>
+ * A spectator whose backlog reaches {@value #QUEUE_CAPACITY} messages is behind anyway: its backlog is
+ * thrown away and replaced with a fresh snapshot of the game. One that falls behind more than
+ * {@value #MAX_RESYNCS} times is dropped.
+ * <p>
+ * The session calls {@link #add} and {@link #publish} while holding its lock, so the catch-up
+ * messages and the broadcasts reach every spectator in the order the game produced them.
+ */
+public class SpectatorFeed {
+    /** Messages a spectator can have waiting, including writes its connection has not finished. */
+    static final int QUEUE_CAPACITY = 64;
+    /** How many times a slow spectator gets a fresh snapshot before it is dropped. */
+    static final int MAX_RESYNCS = 3;
+
+    private final Supplier<List<GameMessage>> catchUp;
+    private final Executor writers;
+    private final BufferPool pool;
+    private final ServerMetrics metrics;
+    private final List<Spectator> spectators = new CopyOnWriteArrayList<>();
+
+    /** One watcher and the messages that were not written to it yet. */
+    private final class Spectator implements Runnable {
+        final PlayerConnection connection;
+        final ArrayBlockingQueue<OutboundMessage> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+        volatile boolean finishing;     // the game is over: close once the queue is written
+        int resyncs;                    // only changed under the session's lock
+
+        Spectator(PlayerConnection connection) {
+            this.connection = connection;
+        }
+
+        /** Queues a message, or starts over with a snapshot if the spectator is too far behind. */
+        void offer(OutboundMessage message) {
+            if (closed.get()) return;
+            message.retain();
+            if (queue.size() + connection.getQueuedWrites() >= QUEUE_CAPACITY || !queue.offer(message)) {
+                message.release();
+                resync();
+            }
+            schedule();
+        }
+
+        /** Throws the backlog away and queues the messages that bring the spectator up to date. */
+        void resync() {
+            if (++resyncs > MAX_RESYNCS) {
+                close(true);
+                return;
+            }
+            metrics.spectatorResynced();
+            discardQueue();
+            for (GameMessage message : catchUp.get()) {
+                queue.offer(new OutboundMessage(message, pool));
+            }
+        }
+
+        /** Writes the queue on a spectator writer unless a writer is already at it. */
+        void schedule() {
+            if (!closed.get() && scheduled.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The server is shutting down
+                    close(false);
+                }
+            }
+        }
+
+        /** Writes everything queued so far; runs on a spectator writer. */
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    OutboundMessage message;
+                    while ((message = queue.poll()) != null) {
+                        try {
+                            connection.send(message);
+                        } finally {
+                            message.release();
+                        }
+                    }
+                    if (finishing) {
+                        close(false);
+                        return;
+                    }
+                    scheduled.set(false);
+                    // A message or the end of the game may have arrived after the last poll but before the flag was cleared
+                    if ((queue.isEmpty() && !finishing) || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                close(false);
+            }
+        }
+
+        void close(boolean dropped) {
+            if (closed.compareAndSet(false, true)) {
+                spectators.remove(this);
+                metrics.spectatorLeft(dropped);
+                connection.close();
+                discardQueue();
+            }
+        }
+
+        private void discardQueue() {
+            OutboundMessage message;
+            while ((message = queue.poll()) != null) {
+                message.release();
+            }
+        }
+    }
+
+    /**
+     * Creates the feed of a session. catchUp returns the messages that show a new or lagging spectator
+     * the current game; it is only called while the session's lock is held.
+     */
+    public SpectatorFeed(Supplier<List<GameMessage>> catchUp, Executor writers, BufferPool pool, ServerMetrics metrics) {
+        this.catchUp = catchUp;
+        this.writers = writers;
+        this.pool = pool;
+        this.metrics = metrics;
+    }
+
+    /** Adds a spectator and queues the current state of the game for it. */
+    public void add(PlayerConnection connection) {
+        Spectator spectator = new Spectator(connection);
+        for (GameMessage message : catchUp.get()) {
+            spectator.queue.offer(new OutboundMessage(message, pool));
+        }
+        spectators.add(spectator);
+        metrics.spectatorJoined();
+        spectator.schedule();
+    }
+
+    /** Queues a broadcast for every spectator. Never blocks. */
+    public void publish(OutboundMessage message) {
+        for (Spectator spectator : spectators) {
+            spectator.offer(message);
+        }
+    }
+
+    /** Lets every spectator receive what is queued for it, then closes them. */
+    public void finish() {
+        for (Spectator spectator : spectators) {
+            spectator.finishing = true;
+            spectator.schedule();
+        }
+    }
+
+    /** Returns the number of spectators watching. */
+    public int size() {
+        return spectators.size();
+    }
+}
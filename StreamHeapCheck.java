@@ -0,0 +1,120 @@
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that a Java-format connection does not keep the messages of a long game alive.
+ * Plays the traffic of a turn (a card selection, a turn result and a PING/PONG) over a loopback socket
+ * many times, once between two MessageStreams (client and blocking server) and once from a client
+ * into the {@link SerializedFrameDecoder} of the NIO server, and measures the heap that stays
+ * reachable after a GC. Without a reset after every message, the handle tables of the object streams
+ * keep each message and the retained heap grows by several MB over 10k turns.
+ * <p>
+ * Usage: java StreamHeapCheck [turns] [maxGrowthKB]. Exits with 1 if the heap grew by more than maxGrowthKB.
+ */
+public class StreamHeapCheck {
+    private static final int WARMUP_TURNS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int turns = args.length >= 1 ? Integer.parseInt(args[0]) : 10_000;
+        long maxGrowthKB = args.length >= 2 ? Long.parseLong(args[1]) : 1024;
+
+        long blocking = checkMessageStreams(turns);
+        long nio = checkFrameDecoder(turns);
+        System.out.println("MessageStream: " + blocking + " KB אחרי " + turns + " תורות");
+        System.out.println("SerializedFrameDecoder: " + nio + " KB אחרי " + turns + " תורות");
+        if (blocking > maxGrowthKB || nio > maxGrowthKB) {
+            System.out.println("נכשל: הזיכרון גדל ביותר מ-" + maxGrowthKB + " KB");
+            System.exit(1);
+        }
+        System.out.println("עבר: הזיכרון לא גדל עם מספר התורות");
+    }
+
+    /** Plays turns between a client and a server MessageStream and returns the heap growth in KB after the warm-up. */
+    private static long checkMessageStreams(int turns) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ServerSocket listener = new ServerSocket(0);
+             Socket clientSocket = new Socket("localhost", listener.getLocalPort());
+             Socket serverSocket = listener.accept()) {
+            noDelay(clientSocket, serverSocket);
+            Future<MessageStream> accepted = executor.submit(() -> MessageStream.accept(serverSocket));
+            MessageStream client = MessageStream.connect(clientSocket, MessageStream.Format.JAVA);
+            MessageStream server = accepted.get();
+
+            long base = 0;
+            for (int turn = 1; turn <= turns; turn++) {
+                CardSelection selection = selection(turn);
+                client.write(selection);
+                server.read();
+                server.write(new GameMessage(GameMessage.MessageType.TURN_RESULT,
+                        new TurnResult(selection, false, new int[] {turn, 0}, 2, false)));
+                client.read();
+                server.write(new GameMessage(GameMessage.MessageType.PING, (Object) (long) turn));
+                GameMessage ping = (GameMessage) client.read();
+                client.write(new GameMessage(GameMessage.MessageType.PONG, ping.getData()));
+                server.read();
+                if (turn == WARMUP_TURNS) base = retainedHeap();
+            }
+            return (retainedHeap() - base) / 1024;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Feeds a client's messages into the NIO server's decoder and returns the heap growth in KB after the warm-up. */
+    private static long checkFrameDecoder(int turns) throws Exception {
+        try (ServerSocket listener = new ServerSocket(0);
+             Socket clientSocket = new Socket("localhost", listener.getLocalPort());
+             Socket serverSocket = listener.accept()) {
+            // The client waits for the server's stream header before it writes
+            ObjectOutputStream header = new ObjectOutputStream(serverSocket.getOutputStream());
+            header.flush();
+            MessageStream client = MessageStream.connect(clientSocket, MessageStream.Format.JAVA);
+            InputStream input = serverSocket.getInputStream();
+            SerializedFrameDecoder decoder = new SerializedFrameDecoder();
+            byte[] buffer = new byte[16 * 1024];
+
+            long base = 0;
+            for (int turn = 1; turn <= turns; turn++) {
+                client.write(selection(turn));
+                client.write(new GameMessage(GameMessage.MessageType.PONG, (Object) (long) turn));
+                int received = 0;
+                while (received < 2) {
+                    Object message = decoder.next();
+                    if (message != null) {
+                        received++;
+                        continue;
+                    }
+                    int count = input.read(buffer);
+                    if (count < 0) throw new EOFException("the client closed the connection");
+                    decoder.append(buffer, 0, count);
+                }
+                if (turn == WARMUP_TURNS) base = retainedHeap();
+            }
+            return (retainedHeap() - base) / 1024;
+        }
+    }
+
+    /** Turns off Nagle's algorithm, so each request and reply leaves at once instead of waiting for an ACK. */
+    private static void noDelay(Socket... sockets) throws IOException {
+        for (Socket socket : sockets) {
+            socket.setTcpNoDelay(true);
+        }
+    }
+
+    private static CardSelection selection(int turn) {
+        return new CardSelection(turn % 4, turn % 3, (turn + 1) % 4, (turn + 2) % 3, turn % 2 + 1);
+    }
+
+    /** Returns the heap in use after a few full GCs. */
+    private static long retainedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,5 +1,6 @@
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 
 /**
@@ -7,25 +8,30 @@ import java.io.Serializable;
  * It has the cards chosen, if it was a match, scores, next player, and if the game ended.
  */
 public class TurnResult implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     private CardSelection selection;
     private boolean isMatch;
-    private int player1Score;
-    private int player2Score;
+    private int[] scores;       // indexed by player number - 1
     private int nextPlayer;
     private boolean gameFinished;
+    private int value1;     // values of the two cards, 0 if not sent
+    private int value2;
 
     /** Create a turn result with all details including if game finished. */
-    public TurnResult(CardSelection selection, boolean isMatch, int player1Score, int player2Score, int nextPlayer, boolean gameFinished) {
+    public TurnResult(CardSelection selection, boolean isMatch, int[] scores, int nextPlayer, boolean gameFinished) {
         this.selection = selection;
         this.isMatch = isMatch;
-        this.player1Score = player1Score;
-        this.player2Score = player2Score;
+        this.scores = scores;
         this.nextPlayer = nextPlayer;
         this.gameFinished = gameFinished;
     }
 
+    /** Create a turn result of a two-player game with all details including if game finished. */
+    public TurnResult(CardSelection selection, boolean isMatch, int player1Score, int player2Score, int nextPlayer, boolean gameFinished) {
+        this(selection, isMatch, new int[] {player1Score, player2Score}, nextPlayer, gameFinished);
+    }
+
     /** Create a turn result assuming the game is not finished. */
     public TurnResult(CardSelection selection, boolean isMatch, int player1Score, int player2Score, int nextPlayer) {
         this(selection, isMatch, player1Score, player2Score, nextPlayer, false);
@@ -50,19 +56,28 @@ public class TurnResult implements Serializable {
     }
 
     public int getPlayer1Score() {
-        return player1Score;
+        return getPlayerScore(1);
     }
 
     public void setPlayer1Score(int player1Score) {
-        this.player1Score = player1Score;
+        setPlayerScore(1, player1Score);
     }
 
     public int getPlayer2Score() {
-        return player2Score;
+        return getPlayerScore(2);
     }
 
     public void setPlayer2Score(int player2Score) {
-        this.player2Score = player2Score;
+        setPlayerScore(2, player2Score);
+    }
+
+    /** Returns the scores of all players, indexed by player number - 1. */
+    public int[] getScores() {
+        return scores;
+    }
+
+    public void setScores(int[] scores) {
+        this.scores = scores;
     }
 
     public int getNextPlayer() {
@@ -81,17 +96,29 @@ public class TurnResult implements Serializable {
         this.gameFinished = gameFinished;
     }
 
-    /** Get score of a player by number (1 or 2). */
+    public int getValue1() {
+        return value1;
+    }
+
+    public int getValue2() {
+        return value2;
+    }
+
+    /** Sets the values of the two selected cards, so clients with a hidden board can show them. */
+    public void setValues(int value1, int value2) {
+        this.value1 = value1;
+        this.value2 = value2;
+    }
+
+    /** Get score of a player by number (1 to the number of players), 0 for an unknown player. */
     public int getPlayerScore(int playerNumber) {
-        return (playerNumber == 1) ? player1Score : player2Score;
+        return playerNumber >= 1 && playerNumber <= scores.length ? scores[playerNumber - 1] : 0;
     }
 
-    /** Set score of a player by number (1 or 2). */
+    /** Set score of a player by number (1 to the number of players). Unknown players are ignored. */
     public void setPlayerScore(int playerNumber, int score) {
-        if (playerNumber == 1) {
-            player1Score = score;
-        } else if (playerNumber == 2) {
-            player2Score = score;
+        if (playerNumber >= 1 && playerNumber <= scores.length) {
+            scores[playerNumber - 1] = score;
         }
     }
 
@@ -99,7 +126,7 @@ public class TurnResult implements Serializable {
     @Override
     public String toString() {
         return String.format(
-                "TurnResult{selection=%s, isMatch=%b, scores=%d-%d, nextPlayer=%d, gameFinished=%b}",
-                selection, isMatch, player1Score, player2Score, nextPlayer, gameFinished);
+                "TurnResult{selection=%s, isMatch=%b, scores=%s, nextPlayer=%d, gameFinished=%b}",
+                selection, isMatch, Arrays.toString(scores), nextPlayer, gameFinished);
     }
 }
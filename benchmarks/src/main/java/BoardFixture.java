@@ -0,0 +1,65 @@
+import memorygame.benchmarks.BoardOps;
+
+import java.util.Random;
+
+/** Drives GameBoard for the board benchmarks. */
+public class BoardFixture implements BoardOps {
+    private GameBoard board;            // untouched board for isMatch
+    private GameBoard almostFinished;   // every card but the last pair matched, for isGameFinished
+    private int[] pairs;    // row1, col1, row2, col2 for every prepared pair
+
+    @Override
+    public Object newBoard(int rows, int cols) {
+        return new GameBoard(rows, cols);
+    }
+
+    @Override
+    public void prepare(int rows, int cols) {
+        board = new GameBoard(rows, cols);
+        Random random = new Random(42);
+        int count = 1024;
+        pairs = new int[count * 4];
+        for (int i = 0; i < count; i++) {
+            int row1 = random.nextInt(rows);
+            int col1 = random.nextInt(cols);
+            int row2 = random.nextInt(rows);
+            int col2 = random.nextInt(cols);
+            if (i % 2 == 0) {
+                // Every other pair is a match: look for the partner of the first card
+                for (int cell = 0; cell < rows * cols; cell++) {
+                    int row = cell / cols;
+                    int col = cell % cols;
+                    if ((row != row1 || col != col1) && board.getCardValue(row, col) == board.getCardValue(row1, col1)) {
+                        row2 = row;
+                        col2 = col;
+                        break;
+                    }
+                }
+            }
+            pairs[i * 4] = row1;
+            pairs[i * 4 + 1] = col1;
+            pairs[i * 4 + 2] = row2;
+            pairs[i * 4 + 3] = col2;
+        }
+        almostFinished = new GameBoard(rows, cols);
+        for (int cell = 0; cell < rows * cols - 2; cell++) {
+            almostFinished.markAsMatched(cell / cols, cell % cols);
+        }
+    }
+
+    @Override
+    public int pairCount() {
+        return pairs.length / 4;
+    }
+
+    @Override
+    public boolean isMatch(int pair) {
+        int i = pair * 4;
+        return board.isMatch(pairs[i], pairs[i + 1], pairs[i + 2], pairs[i + 3]);
+    }
+
+    @Override
+    public boolean isGameFinished() {
+        return almostFinished.isGameFinished();
+    }
+}
@@ -0,0 +1,89 @@
+import memorygame.benchmarks.CodecOps;
+
+import java.io.*;
+
+/** Encodes and decodes game messages for the codec benchmarks. */
+public class CodecFixture implements CodecOps {
+    // Copies of the message in the stream decodeJava reads; it starts over at the end
+    private static final int MESSAGES_PER_STREAM = 1000;
+
+    private Object message;
+
+    private final ByteArrayOutputStream encodeBuffer = new ByteArrayOutputStream();
+    private ObjectOutputStream encoder;
+
+    private byte[] javaStream;
+    private ObjectInputStream decoder;
+    private int decoded;
+
+    private byte[] binaryFrame;
+
+    @Override
+    public void prepare(String type) throws IOException {
+        message = createMessage(type);
+
+        encoder = new ObjectOutputStream(encodeBuffer);
+        encoder.flush();
+
+        // Messages written the way MessageStream sends them: each one followed by a reset,
+        // so every message carries its class descriptors and no back-references
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (int i = 0; i < MESSAGES_PER_STREAM; i++) {
+            out.writeObject(createMessage(type));
+            out.reset();
+        }
+        out.flush();
+        javaStream = bytes.toByteArray();
+        decoder = new ObjectInputStream(new ByteArrayInputStream(javaStream));
+
+        binaryFrame = BinaryProtocol.encode(message);
+    }
+
+    private static Object createMessage(String type) {
+        GameBoard board = new GameBoard(6, 6);
+        board.markAsMatched(0, 0);
+        board.revealCard(1, 1);
+        switch (type) {
+            case "CARD_SELECTION":
+                return new CardSelection(1, 2, 3, 4, 1);
+            case "TURN_RESULT":
+                return new GameMessage(GameMessage.MessageType.TURN_RESULT,
+                        new TurnResult(new CardSelection(1, 2, 3, 4, 1), true, 3, 2, 1, false));
+            case "BOARD_SNAPSHOT":
+                return new GameMessage(GameMessage.MessageType.BOARD_SNAPSHOT, BoardSnapshot.of(board, 7, true));
+            default:
+                throw new IllegalArgumentException("unknown message: " + type);
+        }
+    }
+
+    @Override
+    public int encodeJava() throws IOException {
+        encoder.writeObject(message);
+        encoder.reset();
+        encoder.flush();
+        int size = encodeBuffer.size();
+        encodeBuffer.reset();
+        return size;
+    }
+
+    @Override
+    public Object decodeJava() throws IOException, ClassNotFoundException {
+        if (decoded == MESSAGES_PER_STREAM) {
+            decoded = 0;
+            decoder = new ObjectInputStream(new ByteArrayInputStream(javaStream));
+        }
+        decoded++;
+        return decoder.readObject();
+    }
+
+    @Override
+    public byte[] encodeBinary() throws IOException {
+        return BinaryProtocol.encode(message);
+    }
+
+    @Override
+    public Object decodeBinary() throws IOException {
+        return BinaryProtocol.decode(binaryFrame, 0, binaryFrame.length);
+    }
+}
@@ -0,0 +1,70 @@
+import memorygame.benchmarks.ReplayOps;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Drives GameReplay for the replay benchmark. */
+public class ReplayFixture implements ReplayOps {
+    private int size;
+    private int players;
+    private long seed;
+    private int[] turns;    // player, row1, col1, row2, col2 for every turn of the recorded game
+    private int turn;
+    private GameReplay replay;
+
+    @Override
+    public void prepare(int size, int players, long seed) {
+        this.size = size;
+        this.players = players;
+        this.seed = seed;
+        GameReplay game = new GameReplay(size, size, players, seed);
+        GameBoard board = game.getBoard();
+        Random random = new Random(seed);
+        int[] recorded = new int[64];
+        int count = 0;
+        while (!game.isFinished()) {
+            int first = randomFaceDown(board, random, -1);
+            int second = -1;
+            if (random.nextBoolean()) {
+                // Play the partner of the first card
+                for (int cell = 0; cell < size * size && second < 0; cell++) {
+                    if (cell != first && board.canSelectCard(cell / size, cell % size)
+                            && board.getCardValue(cell / size, cell % size) == board.getCardValue(first / size, first % size)) {
+                        second = cell;
+                    }
+                }
+            } else {
+                second = randomFaceDown(board, random, first);
+            }
+            if (count + 5 > recorded.length) recorded = Arrays.copyOf(recorded, recorded.length * 2);
+            int player = game.getCurrentPlayer();
+            recorded[count++] = player;
+            recorded[count++] = first / size;
+            recorded[count++] = first % size;
+            recorded[count++] = second / size;
+            recorded[count++] = second % size;
+            game.play(player, first / size, first % size, second / size, second % size);
+        }
+        turns = Arrays.copyOf(recorded, count);
+        turn = 0;
+        replay = null;
+    }
+
+    private int randomFaceDown(GameBoard board, Random random, int except) {
+        while (true) {
+            int cell = random.nextInt(size * size);
+            if (cell != except && board.canSelectCard(cell / size, cell % size)) return cell;
+        }
+    }
+
+    @Override
+    public boolean nextTurn() {
+        if (turn == turns.length || replay == null) {
+            replay = new GameReplay(size, size, players, seed);
+            turn = 0;
+        }
+        int i = turn;
+        turn += 5;
+        return replay.play(turns[i], turns[i + 1], turns[i + 2], turns[i + 3], turns[i + 4]);
+    }
+}
@@ -0,0 +1,126 @@
+import memorygame.benchmarks.SessionOps;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Plays games through GameSession over in-memory connections for the session benchmark. */
+public class SessionFixture implements SessionOps {
+    private final ServerContext context = new ServerContext(MemoryGameServer.Mode.BLOCKING, Thread::new);
+    private MessageStream.Format format = MessageStream.Format.JAVA;
+    private int players = GameSession.MIN_PLAYERS;
+
+    private GameSession session;
+    private InMemoryConnection player1;
+    private int[] pairOrder;    // row1, col1, row2, col2 of every pair, in the order they are played
+    private int nextPair;
+
+    /**
+     * A player connection that encodes every message like a real connection would
+     * and then drops the bytes. Broadcasts are encoded once for all players, as on the server.
+     * Remembers the last board snapshot so the fixture can play perfectly.
+     */
+    private static class InMemoryConnection implements PlayerConnection {
+        private final MessageStream.Format format;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ObjectOutputStream out;
+        private BoardSnapshot snapshot;
+
+        InMemoryConnection(MessageStream.Format format) throws IOException {
+            this.format = format;
+            this.out = format == MessageStream.Format.JAVA ? new ObjectOutputStream(bytes) : null;
+        }
+
+        @Override
+        public void send(GameMessage message) throws IOException {
+            if (message.getType() == GameMessage.MessageType.BOARD_SNAPSHOT) {
+                snapshot = (BoardSnapshot) message.getData();
+            }
+            if (format == MessageStream.Format.BINARY) {
+                BinaryProtocol.encode(message);
+            } else {
+                out.writeObject(message);
+                out.flush();
+                bytes.reset();
+            }
+        }
+
+        @Override
+        public void send(OutboundMessage message) throws IOException {
+            if (message.getMessage().getType() == GameMessage.MessageType.BOARD_SNAPSHOT) {
+                snapshot = (BoardSnapshot) message.getMessage().getData();
+            }
+            message.encode(format, null);
+        }
+
+        @Override
+        public Object receive() {
+            throw new UnsupportedOperationException("input is passed to the session directly");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Override
+    public void setFormat(String format) {
+        this.format = MessageStream.Format.valueOf(format);
+    }
+
+    @Override
+    public void setPlayers(int players) {
+        this.players = players;
+    }
+
+    @Override
+    public int newGame(int rows, int cols) throws IOException {
+        List<InMemoryConnection> connections = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            connections.add(new InMemoryConnection(format));
+        }
+        player1 = connections.get(0);
+        session = new GameSession(connections, rows, cols, context);
+        session.startEventDriven();
+
+        // Find the partner of every card from the snapshot the players received
+        BoardSnapshot snapshot = player1.snapshot;
+        int[] values = snapshot.getValues();
+        int[] firstCell = new int[values.length / 2 + 1];
+        Arrays.fill(firstCell, -1);
+        pairOrder = new int[values.length * 2];
+        int pairs = 0;
+        for (int cell = 0; cell < values.length; cell++) {
+            int value = values[cell];
+            if (firstCell[value] < 0) {
+                firstCell[value] = cell;
+            } else {
+                int other = firstCell[value];
+                pairOrder[pairs * 4] = other / cols;
+                pairOrder[pairs * 4 + 1] = other % cols;
+                pairOrder[pairs * 4 + 2] = cell / cols;
+                pairOrder[pairs * 4 + 3] = cell % cols;
+                pairs++;
+            }
+        }
+        nextPair = 0;
+        return pairs;
+    }
+
+    @Override
+    public boolean playMatchingTurn() {
+        if (nextPair * 4 >= pairOrder.length) {
+            return false;
+        }
+        int i = nextPair++ * 4;
+        // A player who keeps finding pairs keeps the turn, so player 1 plays the whole game
+        session.onPlayerMessage(1, new CardSelection(pairOrder[i], pairOrder[i + 1], pairOrder[i + 2], pairOrder[i + 3], 1));
+        return true;
+    }
+
+    @Override
+    public void close() {
+        context.shutdown();
+    }
+}
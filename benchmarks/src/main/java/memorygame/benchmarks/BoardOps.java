@@ -0,0 +1,19 @@
+package memorygame.benchmarks;
+
+/** Board operations measured by {@link GameBoardBenchmark}, implemented by BoardFixture. */
+public interface BoardOps {
+    /** Creates and shuffles a new board. */
+    Object newBoard(int rows, int cols);
+
+    /** Creates the board used by the other calls and a list of card pairs to compare, half of them matching. */
+    void prepare(int rows, int cols);
+
+    /** Returns how many card pairs {@link #prepare} created. */
+    int pairCount();
+
+    /** Calls GameBoard.isMatch for one of the prepared pairs. */
+    boolean isMatch(int pair);
+
+    /** Calls GameBoard.isGameFinished on the prepared board. */
+    boolean isGameFinished();
+}
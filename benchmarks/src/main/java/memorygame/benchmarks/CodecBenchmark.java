@@ -0,0 +1,46 @@
+package memorygame.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Encoding and decoding one message with Java serialization and with the binary protocol. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    @Param({"CARD_SELECTION", "TURN_RESULT", "BOARD_SNAPSHOT"})
+    String message;
+
+    private CodecOps ops;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ops = Fixtures.load("CodecFixture", CodecOps.class);
+        ops.prepare(message);
+    }
+
+    @Benchmark
+    public int javaEncode() throws IOException {
+        return ops.encodeJava();
+    }
+
+    @Benchmark
+    public Object javaDecode() throws IOException, ClassNotFoundException {
+        return ops.decodeJava();
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() throws IOException {
+        return ops.encodeBinary();
+    }
+
+    @Benchmark
+    public Object binaryDecode() throws IOException {
+        return ops.decodeBinary();
+    }
+}
@@ -0,0 +1,21 @@
+package memorygame.benchmarks;
+
+import java.io.IOException;
+
+/** Message encoding measured by {@link CodecBenchmark}, implemented by CodecFixture. */
+public interface CodecOps {
+    /** Selects the message to encode and decode: CARD_SELECTION, TURN_RESULT or BOARD_SNAPSHOT. */
+    void prepare(String message) throws IOException;
+
+    /** Writes the message to a long-lived ObjectOutputStream and resets it, as MessageStream does. Returns the bytes added. */
+    int encodeJava() throws IOException;
+
+    /** Reads the next copy of the message from a long-lived ObjectInputStream, each copy written after a reset. */
+    Object decodeJava() throws IOException, ClassNotFoundException;
+
+    /** Encodes the message as a binary protocol frame. */
+    byte[] encodeBinary() throws IOException;
+
+    /** Decodes a binary protocol frame of the message. */
+    Object decodeBinary() throws IOException;
+}
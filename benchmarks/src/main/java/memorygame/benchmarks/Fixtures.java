@@ -0,0 +1,22 @@
+package memorygame.benchmarks;
+
+/**
+ * Loads the fixtures that drive the game classes.
+ * <p>
+ * The game lives in the default package, which code in a named package cannot import, and JMH only
+ * accepts benchmarks in a named package. The fixtures therefore sit in the default package next to
+ * the game classes, implement the small interfaces of this package, and are loaded by name once per trial.
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    /** Creates the default-package fixture with the given class name. */
+    static <T> T load(String className, Class<T> type) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("fixture not found: " + className, e);
+        }
+    }
+}
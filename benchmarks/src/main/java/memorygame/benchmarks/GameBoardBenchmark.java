@@ -0,0 +1,42 @@
+package memorygame.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** GameBoard construction with shuffling, isMatch and isGameFinished. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBoardBenchmark {
+    @Param({"6", "20", "100"})
+    int size;
+
+    private BoardOps ops;
+    private int pair;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ops = Fixtures.load("BoardFixture", BoardOps.class);
+        ops.prepare(size, size);
+    }
+
+    @Benchmark
+    public Object construct() {
+        return ops.newBoard(size, size);
+    }
+
+    @Benchmark
+    public boolean isMatch() {
+        if (++pair == ops.pairCount()) pair = 0;
+        return ops.isMatch(pair);
+    }
+
+    @Benchmark
+    public boolean isGameFinished() {
+        return ops.isGameFinished();
+    }
+}
@@ -0,0 +1,36 @@
+package memorygame.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless replay of a recorded game, one turn per operation. Starting the game over, which builds
+ * and shuffles a board from its seed, is included once per game.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameReplayBenchmark {
+    @Param({"6", "100"})
+    int size;
+
+    @Param({"2", "8"})
+    int players;
+
+    private ReplayOps ops;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ops = Fixtures.load("ReplayFixture", ReplayOps.class);
+        ops.prepare(size, players, 42);
+    }
+
+    @Benchmark
+    public boolean turn() {
+        return ops.nextTurn();
+    }
+}
@@ -0,0 +1,55 @@
+package memorygame.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full GameSession turns over in-memory connections: validation, board update, the board delta,
+ * the turn result and the next PLAYER_TURN, sent to every player. Broadcasts are encoded once for
+ * all players, so with eight players the time per turn grows far less than fourfold; what remains
+ * is the per-player game start, which is part of every invocation.
+ * Each invocation plays a whole 6x6 game; the score is the time per turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameSessionBenchmark {
+    private static final int SIZE = 6;
+    private static final int TURNS = SIZE * SIZE / 2;
+
+    @Param({"JAVA", "BINARY"})
+    String format;
+
+    @Param({"2", "8"})
+    int players;
+
+    private SessionOps ops;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ops = Fixtures.load("SessionFixture", SessionOps.class);
+        ops.setFormat(format);
+        ops.setPlayers(players);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ops.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TURNS)
+    public int matchingTurn() throws IOException {
+        ops.newGame(SIZE, SIZE);
+        int turns = 0;
+        while (ops.playMatchingTurn()) {
+            turns++;
+        }
+        return turns;
+    }
+}
@@ -0,0 +1,10 @@
+package memorygame.benchmarks;
+
+/** Replay operations measured by {@link GameReplayBenchmark}, implemented by ReplayFixture. */
+public interface ReplayOps {
+    /** Plays a whole game with a seeded board and records its turns, half of them matches. */
+    void prepare(int size, int players, long seed);
+
+    /** Replays the next recorded turn, starting the game over after its last turn. Returns true on a match. */
+    boolean nextTurn();
+}
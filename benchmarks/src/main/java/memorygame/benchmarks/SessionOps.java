@@ -0,0 +1,21 @@
+package memorygame.benchmarks;
+
+import java.io.IOException;
+
+/** A game session driven over in-memory connections, measured by {@link GameSessionBenchmark}. */
+public interface SessionOps {
+    /** Selects the wire format of the in-memory connections: JAVA or BINARY. */
+    void setFormat(String format);
+
+    /** Selects how many players take part in each session. */
+    void setPlayers(int players);
+
+    /** Starts a new session on a board of the given size and returns how many turns a perfect game takes. */
+    int newGame(int rows, int cols) throws IOException;
+
+    /** Plays one matching turn as the current player. Returns false once the game is over. */
+    boolean playMatchingTurn();
+
+    /** Releases the server resources used by the sessions. */
+    void close();
+}